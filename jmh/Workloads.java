@@ -0,0 +1,190 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.logging.LogManager;
+
+/**
+ * The code paths measured by {@code benchmarks.ListingBenchmarks}, one
+ * workload per benchmark method, over synthetic datasets.
+ * <p>
+ * JMH does not accept benchmark classes in the unnamed package, and classes
+ * in a named package cannot refer to the application's classes, so the
+ * benchmarks look this class up by name and receive each workload as a
+ * {@link LongSupplier}. A workload runs over the whole dataset and returns a
+ * checksum for JMH to consume.
+ */
+public final class Workloads {
+
+    private static final String[] CITIES = {"Budapest", "Debrecen", "Nyíregyháza", "Kisvárda", "Tiszaújváros"};
+    private static final long SEED = 42L;
+
+    private Workloads() {
+    }
+
+    /**
+     * Builds the dataset and state of one benchmark.
+     *
+     * @param name The benchmark method name.
+     * @param size Number of listings in the dataset.
+     * @return The workload; also {@link AutoCloseable} if it holds resources.
+     * @throws IllegalArgumentException If there is no workload of that name.
+     */
+    public static LongSupplier create(String name, int size) {
+        LogManager.getLogManager().reset();
+        ByteBuffer text = ByteBuffer.wrap(syntheticFile(size));
+        if (name.equals("parseLine")) {
+            return () -> parseAll(text, null);
+        }
+        PropertyStore store = new PropertyStore(size);
+        parseAll(text, store);
+        RealEstate[] listings = store.stream().toArray(RealEstate[]::new);
+        RealEstate[] plain = Arrays.stream(listings).filter(p -> !(p instanceof Panel)).toArray(RealEstate[]::new);
+        RealEstate[] panels = Arrays.stream(listings).filter(p -> p instanceof Panel).toArray(RealEstate[]::new);
+        PricingRules rules = PricingRules.current();
+
+        switch (name) {
+            case "computeTotalPrice":
+                return () -> {
+                    long sum = 0;
+                    for (RealEstate property : plain) sum += property.computeTotalPrice(rules);
+                    return sum;
+                };
+            case "computeTotalPricePanel":
+                return () -> {
+                    long sum = 0;
+                    for (RealEstate property : panels) sum += property.computeTotalPrice(rules);
+                    return sum;
+                };
+            case "getTotalPrice": {
+                // Listings outside a store, and a rule change before each pass, so every call computes and caches.
+                RealEstate[] detached = detach(store, listings);
+                PricingRules[] alternate = {PricingRules.defaults(), PricingRules.defaults()};
+                int[] pass = new int[1];
+                return () -> {
+                    PricingRules.install(alternate[pass[0]++ & 1]);
+                    long sum = 0;
+                    for (RealEstate property : detached) sum += property.getTotalPrice();
+                    return sum;
+                };
+            }
+            case "getTotalPriceCached": {
+                RealEstate[] detached = detach(store, listings);
+                return () -> {
+                    long sum = 0;
+                    for (RealEstate property : detached) sum += property.getTotalPrice();
+                    return sum;
+                };
+            }
+            case "treeSetAdd":
+                return () -> {
+                    TreeSet<RealEstate> set = new TreeSet<>();
+                    Collections.addAll(set, listings);
+                    return set.size();
+                };
+            case "propertyStoreAdd": {
+                RealEstate[] detached = detach(store, listings);
+                return () -> {
+                    // Each pass takes the listings over from the store of the previous one.
+                    PropertyStore copy = new PropertyStore(size);
+                    for (RealEstate property : detached) copy.add(property);
+                    return copy.size();
+                };
+            }
+            case "summaryScan":
+                return () -> ReportSummary.of(store).totalPrice();
+            case "summaryLive":
+                return () -> store.summary().totalPrice();
+            case "groupedReport":
+                return () -> GroupedReport.of(store).genre(Genre.FARM).count();
+            case "topListings":
+                return () -> TopListings.of(store, 10).cheapest().size();
+            case "distributionReport":
+                return () -> PriceDistribution.of(store).overall().totalPrice.count();
+            case "columnarSummary": {
+                ColumnarStore columns = new ColumnarStore(size);
+                for (RealEstate property : listings) columns.add(property);
+                return () -> columns.summarize().totalPrice();
+            }
+            case "offHeapSummary":
+                return new OffHeapWorkload(listings);
+            case "formatListing":
+                return () -> {
+                    long length = 0;
+                    for (RealEstate property : listings) length += property.toString().length();
+                    return length;
+                };
+            case "discount":
+                // Every pass lowers the prices a little further.
+                return () -> store.discount(null, null, Long.MIN_VALUE, Long.MAX_VALUE,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 1);
+            default:
+                throw new IllegalArgumentException("No workload named " + name);
+        }
+    }
+
+    /** Summarizes an off-heap copy of the listings; closing frees the memory. */
+    private static final class OffHeapWorkload implements LongSupplier, AutoCloseable {
+        private final OffHeapStore records;
+
+        OffHeapWorkload(RealEstate[] listings) {
+            records = new OffHeapStore(listings.length);
+            for (RealEstate property : listings) records.add(property);
+        }
+
+        @Override
+        public long getAsLong() {
+            return records.summarize().totalPrice();
+        }
+
+        @Override
+        public void close() {
+            records.close();
+        }
+    }
+
+    /** Removes the listings from their store, so they no longer report to it. */
+    private static RealEstate[] detach(PropertyStore store, RealEstate[] listings) {
+        for (int id = 0; id < store.idLimit(); id++) {
+            store.remove(id);
+        }
+        return listings;
+    }
+
+    private static long parseAll(ByteBuffer buffer, PropertyStore store) {
+        ListingParser parser = new ListingParser();
+        ListingRecord record = new ListingRecord();
+        long checksum = 0;
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) != '\n') continue;
+            if (parser.parse(buffer, lineStart, i, record)) {
+                checksum += record.sqm;
+                if (store != null) store.add(record.toRealEstate());
+            }
+            lineStart = i + 1;
+        }
+        return checksum;
+    }
+
+    /**
+     * Builds an in-memory listing file over five cities with 25% panels.
+     */
+    private static byte[] syntheticFile(int lines) {
+        ListingGenerator generator = new ListingGenerator();
+        generator.setSeed(SEED);
+        Map<String, Double> cities = new LinkedHashMap<>();
+        for (String city : CITIES) cities.put(city, 1.0);
+        generator.setCityWeights(cities);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 48);
+        try {
+            generator.generate(out, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * One benchmark per parse, price, sort and report path. Each invocation runs
+ * the path once over a dataset of {@code size} synthetic listings made by
+ * {@code ListingGenerator}; the workloads themselves are in {@code Workloads}.
+ * Every benchmark runs in forked JVMs of its own, so JIT profiles of one path
+ * do not affect another.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--enable-preview", "-Xmx8g"})
+public class ListingBenchmarks {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private LongSupplier workload;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) throws ReflectiveOperationException {
+        String benchmark = params.getBenchmark();
+        String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+        workload = (LongSupplier) Class.forName("Workloads")
+                .getMethod("create", String.class, int.class)
+                .invoke(null, name, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (workload instanceof AutoCloseable resource) {
+            resource.close();
+        }
+    }
+
+    @Benchmark
+    public long parseLine() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long computeTotalPrice() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long computeTotalPricePanel() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long getTotalPrice() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long getTotalPriceCached() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long treeSetAdd() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long propertyStoreAdd() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long summaryScan() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long summaryLive() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long groupedReport() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long topListings() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long distributionReport() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long columnarSummary() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long offHeapSummary() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long formatListing() {
+        return workload.getAsLong();
+    }
+
+    @Benchmark
+    public long discount() {
+        return workload.getAsLong();
+    }
+}
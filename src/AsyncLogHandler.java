@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Handler that queues records in a bounded ring buffer and writes them to
+ * the wrapped handlers on a background thread, so logging threads never wait
+ * for formatting or file I/O.
+ * <p>
+ * When the buffer is full, new records are dropped rather than blocking the
+ * caller; the number of dropped records is logged when the handler is closed.
+ */
+class AsyncLogHandler extends Handler {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Handler[] targets;
+    private final ArrayBlockingQueue<LogRecord> ring;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates the handler and starts its writer thread.
+     *
+     * @param capacity Maximum number of records waiting to be written.
+     * @param targets The handlers records are written to.
+     */
+    public AsyncLogHandler(int capacity, Handler... targets) {
+        this.targets = targets.clone();
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drainLoop, "async-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // Resolve the caller now; the writer thread's stack would be wrong.
+        record.getSourceClassName();
+        if (!ring.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes out all queued records on the calling thread.
+     */
+    @Override
+    public void flush() {
+        List<LogRecord> batch = new ArrayList<>();
+        ring.drainTo(batch);
+        write(batch);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        long lost = dropped.get();
+        if (lost > 0) {
+            LogRecord record = new LogRecord(Level.WARNING, "Async log buffer overflowed, dropped " + lost + " records");
+            record.setLoggerName(AsyncLogHandler.class.getName());
+            write(List.of(record));
+        }
+        for (Handler target : targets) {
+            target.close();
+        }
+    }
+
+    /**
+     * Returns the number of records dropped because the buffer was full.
+     *
+     * @return The number of dropped records.
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    private void drainLoop() {
+        List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closed || !ring.isEmpty()) {
+            try {
+                LogRecord first = ring.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                ring.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                reportError("Async log writer failed", e, ErrorManager.WRITE_FAILURE);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<LogRecord> batch) {
+        for (LogRecord record : batch) {
+            for (Handler target : targets) {
+                target.publish(record);
+            }
+        }
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Loads large listing files in parallel.
+ * <p>
+ * The file is split into newline-aligned chunks, each chunk is memory-mapped
+ * and parsed on a {@link ForkJoinPool} with its own {@link ListingParser}, and
+ * the per-chunk results are appended to the store in file order, so listing
+ * IDs are the same as with a sequential load.
+ * <p>
+ * Each chunk feeds its parsed records into its own {@link RecordSink}; the
+ * sinks are then merged in file order. Loading into a {@link PropertyStore},
+ * a {@link ColumnarStore} or an {@link OffHeapStore} are uses of this, as is
+ * {@link #summarize}, which keeps only the report figures.
+ */
+class BulkLoader {
+
+    private static final Logger logger = Logger.getLogger(BulkLoader.class.getName());
+
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 64L << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Throughput figures of one bulk load.
+     *
+     * @param bytes Number of bytes read.
+     * @param rows Number of listings loaded.
+     * @param errors Number of malformed lines skipped.
+     * @param chunks Number of chunks the file was split into.
+     * @param nanos Wall-clock duration of the load.
+     */
+    record LoadStats(long bytes, long rows, long errors, int chunks, long nanos) {
+
+        double mbPerSecond() {
+            return nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+        }
+
+        double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows / (nanos / 1e9);
+        }
+
+        /**
+         * Counts parsed listings that the target then rejected as errors.
+         *
+         * @param rejected Number of listings not loaded after all.
+         * @return The adjusted figures.
+         */
+        LoadStats withRejected(long rejected) {
+            return rejected == 0 ? this : new LoadStats(bytes, rows - rejected, errors + rejected, chunks, nanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows (%d errors) from %d bytes in %d chunks, %.1f ms, %.1f MB/s, %.0f rows/s",
+                    rows, errors, bytes, chunks, nanos / 1e6, mbPerSecond(), rowsPerSecond());
+        }
+    }
+
+    /**
+     * Receives the records parsed from one chunk. The record is reused for the
+     * next line, so a sink must copy what it keeps.
+     */
+    interface RecordSink {
+        void accept(ListingRecord record);
+    }
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a loader that runs on the common ForkJoinPool.
+     */
+    public BulkLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a loader that runs on the given pool.
+     *
+     * @param pool The pool to parse chunks on.
+     */
+    public BulkLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Loads every listing of a file into the store.
+     *
+     * @param file The listing file.
+     * @param store The store to append to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats load(Path file, PropertyStore store) throws IOException {
+        long[] skipped = new long[1];
+        LoadStats stats = load(file, ListSink::new, sink -> skipped[0] += store.addAll(sink.listings));
+        if (skipped[0] > 0) {
+            logger.severe("Skipped " + skipped[0] + " listings of " + file + " whose total price or sums overflow");
+        }
+        return stats.withRejected(skipped[0]);
+    }
+
+    /**
+     * Loads every listing of a file into a columnar store.
+     *
+     * @param file The listing file.
+     * @param store The store to append to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats loadColumnar(Path file, ColumnarStore store) throws IOException {
+        return load(file, ColumnarStore::new, store::appendAll);
+    }
+
+    /**
+     * Loads every listing of a file into an off-heap store. Chunks are parsed
+     * into heap {@link ColumnarStore}s, so no off-heap memory is allocated
+     * and freed per chunk; once all chunks are parsed their row counts size
+     * the store with one allocation and the rows are copied in file order.
+     *
+     * @param file The listing file.
+     * @param store The store to append to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats loadOffHeap(Path file, OffHeapStore store) throws IOException {
+        List<ColumnarStore> chunks = new ArrayList<>();
+        LoadStats stats = load(file, ColumnarStore::new, chunks::add);
+        store.reserve(Math.toIntExact(store.size() + stats.rows()));
+        for (int i = 0; i < chunks.size(); i++) {
+            store.appendAll(chunks.set(i, null));
+        }
+        return stats;
+    }
+
+    /**
+     * Streams every listing of a file into the report figures without keeping
+     * the listings. Each chunk is summarized on its own and the summaries are
+     * combined, so memory use does not depend on the file size.
+     *
+     * @param file The listing file.
+     * @param summary The summary to add the file's listings to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats summarize(Path file, ReportSummary summary) throws IOException {
+        PricingRules rules = PricingRules.current();
+        return load(file, () -> new SummarySink(rules), sink -> summary.combine(sink.summary));
+    }
+
+    /**
+     * Streams every listing of a file into per-city and per-genre figures
+     * without keeping the listings. Each chunk fills its own table and the
+     * tables are merged cell by cell.
+     *
+     * @param file The listing file.
+     * @param report The report to add the file's listings to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats group(Path file, GroupedReport report) throws IOException {
+        PricingRules rules = PricingRules.current();
+        return load(file, () -> new GroupedReport(rules), report::combine);
+    }
+
+    /**
+     * Streams every listing of a file into price distributions without
+     * keeping the listings. Distributions of several files can be collected
+     * by calling this once per file with the same target.
+     *
+     * @param file The listing file.
+     * @param distribution The distributions to add the file's listings to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats distribution(Path file, PriceDistribution distribution) throws IOException {
+        PricingRules rules = PricingRules.current();
+        return load(file, () -> new PriceDistribution(rules), distribution::combine);
+    }
+
+    /**
+     * Streams every listing of a file into top-K heaps without keeping the
+     * listings; the references collected are line offsets, which
+     * {@link #fetch(Path, long[])} turns back into listings.
+     *
+     * @param file The listing file.
+     * @param top The heaps to add the file's listings to.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public LoadStats top(Path file, TopListings top) throws IOException {
+        PricingRules rules = PricingRules.current();
+        return load(file, () -> new TopListings(top.k(), rules), top::combine);
+    }
+
+    /**
+     * Reads and parses the listings starting at the given line offsets.
+     *
+     * @param file The listing file.
+     * @param offsets Offsets of listing lines, e.g. collected by {@link #top}.
+     * @return The listings, in the order of the offsets.
+     * @throws IOException If the file cannot be read or a line is not a valid listing.
+     */
+    public static List<RealEstate> fetch(Path file, long[] offsets) throws IOException {
+        List<RealEstate> listings = new ArrayList<>(offsets.length);
+        ListingParser parser = new ListingParser();
+        ListingRecord record = new ListingRecord();
+        ByteBuffer line = ByteBuffer.allocate(512);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long offset : offsets) {
+                int end;
+                while ((end = readLine(channel, offset, line)) < 0) {
+                    line = ByteBuffer.allocate(line.capacity() * 2);
+                }
+                if (!parser.parse(line, 0, end, record)) {
+                    throw new IOException("No listing at offset " + offset + " of " + file);
+                }
+                listings.add(record.toRealEstate());
+            }
+        }
+        return listings;
+    }
+
+    /** Reads the line at offset into the buffer; returns its length, or -1 if it does not fit. */
+    private static int readLine(FileChannel channel, long offset, ByteBuffer line) throws IOException {
+        line.clear();
+        while (line.hasRemaining() && channel.read(line, offset + line.position()) > 0) {
+            for (int i = 0; i < line.position(); i++) {
+                if (line.get(i) == '\n') return i;
+            }
+        }
+        return line.hasRemaining() ? line.position() : -1;
+    }
+
+    /**
+     * Parses a file chunk by chunk into fresh sinks and hands each sink to
+     * {@code merge} in file order once all chunks are parsed.
+     *
+     * @param file The listing file.
+     * @param newSink Creates the sink for one chunk.
+     * @param merge Receives the filled sinks in file order.
+     * @return Throughput figures of the load.
+     * @throws IOException If the file cannot be read.
+     */
+    public <S extends RecordSink> LoadStats load(Path file, Supplier<S> newSink, Consumer<? super S> merge)
+            throws IOException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size, pool.getParallelism());
+
+            List<ChunkTask<S>> tasks = new ArrayList<>(bounds.length - 1);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                tasks.add(new ChunkTask<>(channel, bounds[i], bounds[i + 1], newSink.get()));
+            }
+            try {
+                pool.invoke(new RecursiveTask<Void>() {
+                    @Override
+                    protected Void compute() {
+                        ForkJoinTask.invokeAll(tasks);
+                        return null;
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            long rows = 0;
+            long errors = 0;
+            for (ChunkTask<S> task : tasks) {
+                task.join();
+                merge.accept(task.sink);
+                rows += task.rows;
+                errors += task.errors;
+            }
+            return new LoadStats(size, rows, errors, tasks.size(), System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Splits the file into chunks that each end just after a newline.
+     *
+     * @return Chunk boundaries; chunk i spans [bounds[i], bounds[i + 1]).
+     */
+    static long[] chunkBounds(FileChannel channel, long size, int parallelism) throws IOException {
+        long target = size / Math.max(1, parallelism * CHUNKS_PER_THREAD);
+        target = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, target));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = 0;
+        while (size - position > target) {
+            long next = nextLineStart(channel, position + target, size, probe);
+            if (next >= size) break;
+            bounds.add(next);
+            position = next;
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Collects the parsed listings of one chunk as model objects.
+     */
+    private static final class ListSink implements RecordSink {
+        final List<RealEstate> listings = new ArrayList<>();
+
+        @Override
+        public void accept(ListingRecord record) {
+            listings.add(record.toRealEstate());
+        }
+    }
+
+    /**
+     * Adds the parsed listings of one chunk to a report summary.
+     */
+    private static final class SummarySink implements RecordSink {
+        final ReportSummary summary = new ReportSummary();
+        private final PricingRules rules;
+
+        SummarySink(PricingRules rules) {
+            this.rules = rules;
+        }
+
+        @Override
+        public void accept(ListingRecord record) {
+            summary.accept(record.price, record.totalPrice(rules),
+                    ReportSummary.sqmPerRoom(record.sqm, record.numberOfRooms));
+        }
+    }
+
+    /**
+     * Maps and parses one newline-aligned chunk of the file into a sink.
+     */
+    @SuppressWarnings("serial")
+    private static final class ChunkTask<S extends RecordSink> extends RecursiveTask<Void> {
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        final S sink;
+        long rows;
+        long errors;
+
+        ChunkTask(FileChannel channel, long start, long end, S sink) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.sink = sink;
+        }
+
+        @Override
+        protected Void compute() {
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ListingParser parser = new ListingParser();
+            ListingRecord record = new ListingRecord();
+
+            int limit = buffer.limit();
+            int lineStart = 0;
+            for (int i = 0; i <= limit; i++) {
+                if (i < limit && buffer.get(i) != '\n') continue;
+                if (!ListingParser.isBlank(buffer, lineStart, i)) {
+                    String error = null;
+                    if (parser.parse(buffer, lineStart, i, record)) {
+                        record.offset = start + lineStart;
+                        try {
+                            sink.accept(record);
+                            rows++;
+                        } catch (ArithmeticException e) {
+                            // A total or sum that overflows, e.g. under rules installed after parsing.
+                            error = e.getMessage();
+                        }
+                    } else {
+                        error = parser.error();
+                    }
+                    if (error != null) {
+                        errors++;
+                        logger.severe("Error parsing line: " + ListingParser.text(buffer, lineStart, i)
+                                + " (" + error + ")");
+                    }
+                }
+                lineStart = i + 1;
+            }
+            return null;
+        }
+    }
+}
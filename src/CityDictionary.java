@@ -0,0 +1,75 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide dictionary that assigns each city name a small, dense integer
+ * ID. IDs are handed out in first-seen order and never reused, so they can
+ * index plain arrays such as the city modifiers of {@link PricingRules}.
+ */
+final class CityDictionary {
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[16];
+    private static volatile int count;
+
+    private CityDictionary() {
+    }
+
+    /**
+     * Returns the ID of a city, registering the city if it is new.
+     *
+     * @param city The city name.
+     * @return The city's ID.
+     */
+    static int idOf(String city) {
+        Integer id = ids.get(city);
+        return id != null ? id : register(city);
+    }
+
+    /**
+     * Returns the ID of a city without registering it.
+     *
+     * @param city The city name.
+     * @return The city's ID, or -1 if the city has never been seen.
+     */
+    static int find(String city) {
+        Integer id = ids.get(city);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the name of a city.
+     *
+     * @param id A city ID returned by {@link #idOf(String)}.
+     * @return The city name.
+     */
+    static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of registered cities; valid IDs are 0 to size() - 1.
+     *
+     * @return The number of cities.
+     */
+    static int size() {
+        return count;
+    }
+
+    private static synchronized int register(String city) {
+        Integer existing = ids.get(city);
+        if (existing != null) {
+            return existing;
+        }
+        int id = count;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = city.intern();
+        names = current;
+        count = id + 1;
+        ids.put(current[id], id);
+        return id;
+    }
+}
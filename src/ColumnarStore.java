@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays listing store: each field lives in its own primitive
+ * array, cities are stored as {@link CityDictionary} IDs and the panel and
+ * insulation flags are packed into bitsets. A listing costs about 30 bytes
+ * instead of a full object graph, and aggregate scans run as tight loops
+ * over the arrays.
+ * <p>
+ * Rows are exposed as {@link ListingView} flyweights; {@link #get(int)}
+ * copies a row into a regular {@link RealEstate} or {@link Panel}.
+ */
+class ColumnarStore implements ListingTable, BulkLoader.RecordSink {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final Genre[] GENRES = Genre.values();
+
+    /** Prices per square meter in {@link Money} minor units. */
+    private long[] price;
+    private int[] sqm;
+    private double[] rooms;
+    private int[] cityId;
+    private byte[] genreOrdinal;
+    private int[] floor;
+    private long[] panelBits;
+    private long[] insulatedBits;
+    private int size;
+
+    /**
+     * Creates an empty store.
+     */
+    public ColumnarStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the given number of rows.
+     *
+     * @param expectedSize Number of rows the store should hold without resizing.
+     */
+    public ColumnarStore(int expectedSize) {
+        allocate(Math.max(expectedSize, INITIAL_CAPACITY));
+    }
+
+    /**
+     * Appends a parsed listing.
+     *
+     * @param record The parsed fields.
+     */
+    @Override
+    public void accept(ListingRecord record) {
+        append(record.panel, record.cityId, record.price, record.sqm,
+                record.numberOfRooms, record.genre, record.floor, record.insulated);
+    }
+
+    /**
+     * Appends a copy of a model object's fields.
+     *
+     * @param property The listing to copy.
+     * @return The row the listing was stored in.
+     */
+    public int add(RealEstate property) {
+        if (property instanceof Panel panel) {
+            return append(true, panel.getCityId(), panel.getPriceMinor(), panel.getSqm(),
+                    panel.getNumberOfRooms(), panel.getGenre(), panel.getFloor(), panel.isInsulated());
+        }
+        return append(false, property.getCityId(), property.getPriceMinor(), property.getSqm(),
+                property.getNumberOfRooms(), property.getGenre(), 0, false);
+    }
+
+    /**
+     * Appends one row.
+     *
+     * @return The new row's index.
+     */
+    public int append(boolean panel, int city, long pricePerSqm, int area, double numberOfRooms,
+                      Genre genre, int panelFloor, boolean insulated) {
+        if (size == price.length) {
+            grow(size + 1);
+        }
+        int row = size++;
+        price[row] = pricePerSqm;
+        sqm[row] = area;
+        rooms[row] = numberOfRooms;
+        cityId[row] = city;
+        genreOrdinal[row] = (byte) genre.ordinal();
+        floor[row] = panelFloor;
+        setBit(panelBits, row, panel);
+        setBit(insulatedBits, row, insulated);
+        return row;
+    }
+
+    /**
+     * Appends all rows of another store, column by column.
+     *
+     * @param other The store to copy from.
+     */
+    public void appendAll(ColumnarStore other) {
+        if (size + other.size > price.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.price, 0, price, size, other.size);
+        System.arraycopy(other.sqm, 0, sqm, size, other.size);
+        System.arraycopy(other.rooms, 0, rooms, size, other.size);
+        System.arraycopy(other.cityId, 0, cityId, size, other.size);
+        System.arraycopy(other.genreOrdinal, 0, genreOrdinal, size, other.size);
+        System.arraycopy(other.floor, 0, floor, size, other.size);
+        for (int row = 0; row < other.size; row++) {
+            setBit(panelBits, size + row, other.isPanel(row));
+            setBit(insulatedBits, size + row, other.isInsulated(row));
+        }
+        size += other.size;
+    }
+
+    /**
+     * Copies a row into a standalone model object.
+     *
+     * @param row The row.
+     * @return A Panel for panel rows, a RealEstate otherwise.
+     */
+    public RealEstate get(int row) {
+        return view().moveTo(row).toRealEstate();
+    }
+
+    /**
+     * Computes the summary report figures with one scan over the price,
+     * area, city and flag columns, in parallel chunks for large stores.
+     *
+     * @return The summary.
+     */
+    public ReportSummary summarize() {
+        return ReportSummary.of(this);
+    }
+
+    @Override
+    public long totalPrice(int row, PricingRules rules) {
+        long total = rules.baseTotalPrice(cityId[row], price[row], sqm[row]);
+        return isPanel(row) ? rules.panelTotalPrice(total, floor[row], isInsulated(row)) : total;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isPanel(int row) {
+        return getBit(panelBits, row);
+    }
+
+    @Override
+    public int cityId(int row) {
+        return cityId[row];
+    }
+
+    @Override
+    public long price(int row) {
+        return price[row];
+    }
+
+    @Override
+    public int sqm(int row) {
+        return sqm[row];
+    }
+
+    @Override
+    public double numberOfRooms(int row) {
+        return rooms[row];
+    }
+
+    @Override
+    public Genre genre(int row) {
+        return GENRES[genreOrdinal[row]];
+    }
+
+    @Override
+    public int floor(int row) {
+        return floor[row];
+    }
+
+    @Override
+    public boolean isInsulated(int row) {
+        return getBit(insulatedBits, row);
+    }
+
+    @Override
+    public void setPrice(int row, long pricePerSqm) {
+        price[row] = pricePerSqm;
+    }
+
+    private void allocate(int capacity) {
+        price = new long[capacity];
+        sqm = new int[capacity];
+        rooms = new double[capacity];
+        cityId = new int[capacity];
+        genreOrdinal = new byte[capacity];
+        floor = new int[capacity];
+        panelBits = new long[words(capacity)];
+        insulatedBits = new long[words(capacity)];
+    }
+
+    private void grow(int required) {
+        int capacity = Math.max(price.length + (price.length >> 1), required);
+        price = Arrays.copyOf(price, capacity);
+        sqm = Arrays.copyOf(sqm, capacity);
+        rooms = Arrays.copyOf(rooms, capacity);
+        cityId = Arrays.copyOf(cityId, capacity);
+        genreOrdinal = Arrays.copyOf(genreOrdinal, capacity);
+        floor = Arrays.copyOf(floor, capacity);
+        panelBits = Arrays.copyOf(panelBits, words(capacity));
+        insulatedBits = Arrays.copyOf(insulatedBits, words(capacity));
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static boolean getBit(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void setBit(long[] bits, int index, boolean value) {
+        if (value) bits[index >>> 6] |= 1L << index;
+        else bits[index >>> 6] &= ~(1L << index);
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Follows a listing file that is appended to while the application runs.
+ * <p>
+ * The watcher remembers the offset just past the last complete line it has
+ * parsed. Each {@link #poll()} reads only the bytes appended since then,
+ * hands the complete lines to a {@link Listener} and leaves a trailing
+ * partial line for the next poll, so the cost of an update is proportional
+ * to the new lines rather than to the file size. {@link #watch()} polls
+ * whenever a {@link WatchService} reports the file as created or modified.
+ * <p>
+ * If the file shrinks or is replaced by a different file, the listener is
+ * told to discard what it has and the file is read again from the start.
+ */
+class FeedWatcher implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(FeedWatcher.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Receives the listings parsed from the appended lines.
+     */
+    interface Listener extends BulkLoader.RecordSink {
+
+        /**
+         * Called after the records of one poll have been passed to
+         * {@link #accept(ListingRecord)}.
+         *
+         * @param stats Figures of the lines parsed by this poll.
+         */
+        void updated(BulkLoader.LoadStats stats);
+
+        /**
+         * Called when the file was truncated or replaced, before it is read
+         * again from the start.
+         */
+        void truncated();
+    }
+
+    private final Path file;
+    private final Listener listener;
+    private final ListingParser parser = new ListingParser();
+    private final ListingRecord record = new ListingRecord();
+    private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    /** Offset just past the last complete line parsed. */
+    private long offset;
+    /** Identity of the file last read, to notice when it is replaced. */
+    private Object fileKey;
+    private WatchService watchService;
+
+    /**
+     * Creates a watcher that starts at the beginning of the file.
+     *
+     * @param file The listing file.
+     * @param listener Receives the parsed listings.
+     */
+    FeedWatcher(Path file, Listener listener) {
+        this.file = file.toAbsolutePath();
+        this.listener = Objects.requireNonNull(listener, "listener");
+    }
+
+    /**
+     * Returns the offset just past the last complete line parsed.
+     *
+     * @return The file offset.
+     */
+    long offset() {
+        return offset;
+    }
+
+    /**
+     * Parses the complete lines appended since the last poll. A missing file
+     * counts as empty.
+     *
+     * @return Figures of the lines parsed.
+     * @throws IOException If the file cannot be read.
+     */
+    BulkLoader.LoadStats poll() throws IOException {
+        long started = System.nanoTime();
+        long from = offset;
+        long rows = 0;
+        long errors = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            long size = channel.size();
+            if (size < offset || (fileKey != null && key != null && !key.equals(fileKey))) {
+                logger.warning("Listing file " + file + " was truncated or replaced, reading it again");
+                listener.truncated();
+                offset = 0;
+                from = 0;
+            }
+            fileKey = key;
+
+            buffer.clear();
+            long position = offset;
+            while (position < size) {
+                int read = channel.read(buffer, position);
+                if (read <= 0) break;
+                position += read;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) != '\n') continue;
+                    if (!ListingParser.isBlank(buffer, lineStart, i)) {
+                        String error = null;
+                        if (parser.parse(buffer, lineStart, i, record)) {
+                            record.offset = offset + lineStart;
+                            try {
+                                listener.accept(record);
+                                rows++;
+                            } catch (ArithmeticException e) {
+                                // A total or sum that overflows, e.g. under rules installed after parsing.
+                                error = e.getMessage();
+                            }
+                        } else {
+                            error = parser.error();
+                        }
+                        if (error != null) {
+                            errors++;
+                            logger.severe("Error parsing line: " + ListingParser.text(buffer, lineStart, i)
+                                    + " (" + error + ")");
+                        }
+                    }
+                    lineStart = i + 1;
+                }
+                // Keep the partial line at the front of the buffer, growing it if the line fills it.
+                offset += lineStart;
+                buffer.flip().position(lineStart);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            logger.fine("Listing file " + file + " does not exist yet");
+        }
+        BulkLoader.LoadStats stats = new BulkLoader.LoadStats(offset - from, rows, errors, 1, System.nanoTime() - started);
+        if (rows > 0 || errors > 0) {
+            listener.updated(stats);
+        }
+        shrinkBuffer();
+        return stats;
+    }
+
+    /**
+     * Polls every time the file is created or modified, until the thread is
+     * interrupted or the watcher is closed.
+     *
+     * @throws IOException If the directory cannot be watched or the file cannot be read.
+     */
+    void watch() throws IOException {
+        Path directory = file.getParent();
+        synchronized (this) {
+            if (watchService == null) {
+                watchService = directory.getFileSystem().newWatchService();
+            }
+        }
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        logger.info("Watching listing file " + file);
+
+        // Catch up on lines written before the directory was registered.
+        poll();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || file.getFileName().equals(event.context());
+                }
+                if (changed) {
+                    poll();
+                }
+                if (!key.reset()) {
+                    logger.warning("Directory " + directory + " is no longer watched");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            logger.fine("Stopped watching listing file " + file);
+        }
+    }
+
+    /**
+     * Stops a running {@link #watch()}.
+     *
+     * @throws IOException If the watch service cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Drops a buffer that grew for an unusually long line. A partial line is
+     * read again by the next poll, so nothing needs to be kept.
+     */
+    private void shrinkBuffer() {
+        if (buffer.capacity() > READ_BUFFER_SIZE) {
+            buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Report figures grouped by city and genre, built in a single pass.
+ * <p>
+ * Listings are accumulated into a dense table of {@link ReportSummary}
+ * cells indexed by {@code cityId * GENRES + genre ordinal}, so grouping costs
+ * one array access per listing and no hashing. Parallel runs fill one table
+ * per task and merge the tables cell by cell with
+ * {@link #combine(GroupedReport)}. The per-city and per-genre figures are
+ * rolled up from the city×genre cells when they are read.
+ */
+class GroupedReport implements BulkLoader.RecordSink {
+
+    private static final Genre[] GENRES = Genre.values();
+
+    private final PricingRules rules;
+    /** Summaries by city ID and genre; null for combinations not seen yet. */
+    private ReportSummary[] cells = new ReportSummary[0];
+
+    /**
+     * Creates an empty report that prices parsed records with the given rules.
+     *
+     * @param rules The pricing rules for {@link #accept(ListingRecord)}.
+     */
+    GroupedReport(PricingRules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Groups every listing of a store, in parallel for large stores.
+     *
+     * @param store The store to group.
+     * @return The grouped report.
+     */
+    static GroupedReport of(PropertyStore store) {
+        PricingRules rules = PricingRules.current();
+        return store.scan(listings ->
+                listings.collect(() -> new GroupedReport(rules), GroupedReport::accept, GroupedReport::combine));
+    }
+
+    /**
+     * Groups every row of a table, in parallel chunks for large tables.
+     *
+     * @param table The table to group.
+     * @return The grouped report.
+     */
+    static GroupedReport of(ListingTable table) {
+        PricingRules rules = PricingRules.current();
+        int size = table.size();
+        int chunks = (size + ReportSummary.SCAN_CHUNK - 1) / ReportSummary.SCAN_CHUNK;
+        return IntStream.range(0, Math.max(chunks, 1)).parallel()
+                .mapToObj(c -> {
+                    GroupedReport report = new GroupedReport(rules);
+                    int to = Math.min(size, (c + 1) * ReportSummary.SCAN_CHUNK);
+                    for (int row = c * ReportSummary.SCAN_CHUNK; row < to; row++) {
+                        report.accept(table.cityId(row), table.genre(row), table.price(row),
+                                table.totalPrice(row, rules),
+                                ReportSummary.sqmPerRoom(table.sqm(row), table.numberOfRooms(row)));
+                    }
+                    return report;
+                })
+                .reduce((a, b) -> {
+                    a.combine(b);
+                    return a;
+                })
+                .orElseGet(() -> new GroupedReport(rules));
+    }
+
+    /**
+     * Adds a parsed listing.
+     *
+     * @param record The parsed fields.
+     */
+    @Override
+    public void accept(ListingRecord record) {
+        accept(record.cityId, record.genre, record.price, record.totalPrice(rules),
+                ReportSummary.sqmPerRoom(record.sqm, record.numberOfRooms));
+    }
+
+    /**
+     * Adds a listing, priced with this report's rules from its fields, so
+     * that a store scan never waits for the store to reprice it.
+     *
+     * @param property The listing to add.
+     */
+    void accept(RealEstate property) {
+        accept(property.getCityId(), property.getGenre(), property.getPriceMinor(), property.computeTotalPrice(rules),
+                ReportSummary.sqmPerRoom(property.getSqm(), property.getNumberOfRooms()));
+    }
+
+    /**
+     * Adds one listing's figures to its group.
+     *
+     * @param cityId The listing's city ID.
+     * @param genre The listing's genre.
+     * @param price Price per square meter in minor units.
+     * @param totalPrice Total price in minor units.
+     * @param sqmPerRoom Average square meters per room.
+     */
+    void accept(int cityId, Genre genre, long price, long totalPrice, double sqmPerRoom) {
+        cell(cityId * GENRES.length + genre.ordinal()).accept(price, totalPrice, sqmPerRoom);
+    }
+
+    /**
+     * Merges another report into this one.
+     *
+     * @param other Report of a disjoint set of listings.
+     */
+    void combine(GroupedReport other) {
+        for (int i = 0; i < other.cells.length; i++) {
+            if (other.cells[i] != null) {
+                cell(i).combine(other.cells[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the figures of one city and genre.
+     *
+     * @param cityId A city ID.
+     * @param genre A genre.
+     * @return The figures; empty if there is no such listing.
+     */
+    ReportSummary cityAndGenre(int cityId, Genre genre) {
+        int i = cityId * GENRES.length + genre.ordinal();
+        ReportSummary summary = new ReportSummary();
+        if (i < cells.length && cells[i] != null) {
+            summary.combine(cells[i]);
+        }
+        return summary;
+    }
+
+    /**
+     * Returns the figures of one city over all genres.
+     *
+     * @param cityId A city ID.
+     * @return The figures; empty if the city has no listings.
+     */
+    ReportSummary city(int cityId) {
+        ReportSummary summary = new ReportSummary();
+        for (Genre genre : GENRES) {
+            summary.combine(cityAndGenre(cityId, genre));
+        }
+        return summary;
+    }
+
+    /**
+     * Returns the figures of one genre over all cities.
+     *
+     * @param genre A genre.
+     * @return The figures; empty if the genre has no listings.
+     */
+    ReportSummary genre(Genre genre) {
+        ReportSummary summary = new ReportSummary();
+        for (int i = genre.ordinal(); i < cells.length; i += GENRES.length) {
+            if (cells[i] != null) {
+                summary.combine(cells[i]);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Returns the IDs of the cities with at least one listing, in ID order.
+     *
+     * @return A new array of city IDs.
+     */
+    int[] cityIds() {
+        return IntStream.range(0, cells.length / GENRES.length)
+                .filter(cityId -> city(cityId).count() > 0)
+                .toArray();
+    }
+
+    private ReportSummary cell(int i) {
+        if (i >= cells.length) {
+            int length = Math.max(i + 1, cells.length * 2);
+            cells = Arrays.copyOf(cells, (length + GENRES.length - 1) / GENRES.length * GENRES.length);
+        }
+        ReportSummary summary = cells[i];
+        if (summary == null) {
+            summary = cells[i] = new ReportSummary();
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+/**
+ * Histogram of {@code long} values over fixed bucket boundaries.
+ * <p>
+ * Bucket i holds the values below {@code bounds[i]} and, for i &gt; 0, at
+ * least {@code bounds[i - 1]}; one extra bucket holds the values of at least
+ * the last bound. Memory is fixed at construction and histograms with the
+ * same boundaries merge by adding their counts.
+ */
+class Histogram {
+
+    private final long[] bounds;
+    private final long[] counts;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param bounds Exclusive upper bounds of the buckets, strictly ascending.
+     */
+    Histogram(long[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds must be strictly ascending: " + Arrays.toString(bounds));
+            }
+        }
+        this.bounds = bounds.clone();
+        this.counts = new long[bounds.length + 1];
+    }
+
+    /**
+     * Creates bucket bounds of equal width starting at zero.
+     *
+     * @param width Width of each bucket.
+     * @param buckets Number of bounded buckets.
+     * @return The bounds width, 2 * width, ..., buckets * width.
+     */
+    static long[] linearBounds(long width, int buckets) {
+        long[] bounds = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bounds[i] = Math.multiplyExact(width, i + 1);
+        }
+        return bounds;
+    }
+
+    /**
+     * Adds a value to its bucket.
+     *
+     * @param value The value to add.
+     */
+    void add(long value) {
+        counts[bucketOf(value)]++;
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     *
+     * @param other A histogram with the same bounds.
+     * @throws IllegalArgumentException If the bounds differ.
+     */
+    void combine(Histogram other) {
+        if (!Arrays.equals(bounds, other.bounds)) {
+            throw new IllegalArgumentException("Cannot merge histograms with different buckets");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * Returns the number of buckets, including the open-ended ones.
+     *
+     * @return The number of buckets.
+     */
+    int buckets() {
+        return counts.length;
+    }
+
+    long count(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * Returns the inclusive lower bound of a bucket.
+     *
+     * @param bucket The bucket.
+     * @return The lower bound, or Long.MIN_VALUE for the first bucket.
+     */
+    long lowerBound(int bucket) {
+        return bucket == 0 ? Long.MIN_VALUE : bounds[bucket - 1];
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket.
+     *
+     * @param bucket The bucket.
+     * @return The upper bound, or Long.MAX_VALUE for the last bucket.
+     */
+    long upperBound(int bucket) {
+        return bucket == bounds.length ? Long.MAX_VALUE : bounds[bucket];
+    }
+
+    private int bucketOf(long value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (value < bounds[mid]) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Deterministic generator of synthetic listing files in the format read by
+ * {@link RealEstateAgent#loadFromFile(String)}.
+ * <p>
+ * Lines are encoded straight into a reusable byte buffer and streamed to the
+ * output, so files of any size are written without holding them in memory.
+ * The same seed and settings always produce the same bytes.
+ */
+class ListingGenerator {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 512;
+    private static final byte[] REALESTATE = ascii("REALESTATE");
+    private static final byte[] PANEL = ascii("PANEL");
+    private static final byte[] YES = ascii("yes");
+    private static final byte[] NO = ascii("no");
+    private static final byte[][] MALFORMED = {
+            ascii("REALESTATE#Budapest#not-a-price#100#4#CONDOMINIUM"),
+            ascii("REALESTATE#Debrecen#220000#120#5#CASTLE"),
+            ascii("PANEL#Budapest#180000#70"),
+            ascii("REALESTATE"),
+    };
+
+    private long seed = 42L;
+    private String[] cities = {"Budapest", "Debrecen", "Nyíregyháza"};
+    private double[] cityWeights = {1, 1, 1};
+    private double[] genreWeights = new double[Genre.values().length];
+    private double panelRatio = 0.25;
+    private int minFloor = 0;
+    private int maxFloor = 10;
+    private int minPrice = 50_000;
+    private int maxPrice = 300_000;
+    private int minSqm = 20;
+    private int maxSqm = 200;
+    private int maxRooms = 6;
+    private double malformedRate = 0.0;
+
+    /**
+     * Creates a generator with three equally weighted cities, an even genre
+     * mix, 25% panels and no malformed lines.
+     */
+    public ListingGenerator() {
+        Arrays.fill(genreWeights, 1.0);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the cities and their relative frequencies.
+     *
+     * @param weights City names mapped to non-negative weights.
+     */
+    public void setCityWeights(Map<String, Double> weights) {
+        if (weights.isEmpty()) throw new IllegalArgumentException("At least one city is required");
+        cities = weights.keySet().toArray(new String[0]);
+        cityWeights = new double[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            cityWeights[i] = weights.get(cities[i]);
+        }
+    }
+
+    /**
+     * Sets the relative frequency of each genre; unlisted genres are not generated.
+     *
+     * @param weights Genres mapped to non-negative weights.
+     */
+    public void setGenreWeights(Map<Genre, Double> weights) {
+        Arrays.fill(genreWeights, 0.0);
+        weights.forEach((genre, weight) -> genreWeights[genre.ordinal()] = weight);
+    }
+
+    public void setPanelRatio(double panelRatio) {
+        this.panelRatio = fraction(panelRatio, "panel ratio");
+    }
+
+    public void setFloorRange(int minFloor, int maxFloor) {
+        if (minFloor > maxFloor) throw new IllegalArgumentException("Invalid floor range: " + minFloor + ".." + maxFloor);
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+    }
+
+    public void setPriceRange(int minPrice, int maxPrice) {
+        if (minPrice < 0 || minPrice > maxPrice) throw new IllegalArgumentException("Invalid price range: " + minPrice + ".." + maxPrice);
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    public void setSqmRange(int minSqm, int maxSqm) {
+        if (minSqm < 1 || minSqm > maxSqm) throw new IllegalArgumentException("Invalid sqm range: " + minSqm + ".." + maxSqm);
+        this.minSqm = minSqm;
+        this.maxSqm = maxSqm;
+    }
+
+    public void setMaxRooms(int maxRooms) {
+        if (maxRooms < 1) throw new IllegalArgumentException("Invalid number of rooms: " + maxRooms);
+        this.maxRooms = maxRooms;
+    }
+
+    public void setMalformedRate(double malformedRate) {
+        this.malformedRate = fraction(malformedRate, "malformed rate");
+    }
+
+    /**
+     * Writes listing lines to a file.
+     *
+     * @param file The file to create or overwrite.
+     * @param rows Number of lines to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void generate(Path file, long rows) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            generate(out, rows);
+        }
+    }
+
+    /**
+     * Writes listing lines to a stream. The stream is not closed.
+     *
+     * @param out The stream to write to.
+     * @param rows Number of lines to write.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void generate(OutputStream out, long rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] cityCumulative = cumulative(cityWeights);
+        double[] genreCumulative = cumulative(genreWeights);
+        byte[][] cityBytes = new byte[cities.length][];
+        for (int i = 0; i < cities.length; i++) {
+            cityBytes[i] = cities[i].getBytes(StandardCharsets.UTF_8);
+        }
+        byte[][] genreBytes = new byte[Genre.values().length][];
+        for (Genre genre : Genre.values()) {
+            genreBytes[genre.ordinal()] = ascii(genre.name());
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int pos = 0;
+        for (long row = 0; row < rows; row++) {
+            if (pos > buffer.length - MAX_LINE_LENGTH) {
+                out.write(buffer, 0, pos);
+                pos = 0;
+            }
+            if (malformedRate > 0 && random.nextDouble() < malformedRate) {
+                pos = put(buffer, pos, MALFORMED[random.nextInt(MALFORMED.length)]);
+                buffer[pos++] = '\n';
+                continue;
+            }
+            boolean panel = random.nextDouble() < panelRatio;
+            pos = put(buffer, pos, panel ? PANEL : REALESTATE);
+            buffer[pos++] = '#';
+            pos = put(buffer, pos, cityBytes[pick(cityCumulative, random)]);
+            buffer[pos++] = '#';
+            pos = putInt(buffer, pos, between(random, minPrice, maxPrice));
+            buffer[pos++] = '#';
+            pos = putInt(buffer, pos, between(random, minSqm, maxSqm));
+            buffer[pos++] = '#';
+            pos = putInt(buffer, pos, between(random, 1, maxRooms));
+            buffer[pos++] = '#';
+            pos = put(buffer, pos, genreBytes[pick(genreCumulative, random)]);
+            if (panel) {
+                buffer[pos++] = '#';
+                pos = putInt(buffer, pos, between(random, minFloor, maxFloor));
+                buffer[pos++] = '#';
+                pos = put(buffer, pos, random.nextBoolean() ? YES : NO);
+            }
+            buffer[pos++] = '\n';
+        }
+        out.write(buffer, 0, pos);
+    }
+
+    /**
+     * Command-line entry point.
+     * <p>
+     * Usage: {@code java ListingGenerator <file> <rows> [seed] [panelRatio] [malformedRate]}
+     *
+     * @param args Command-line arguments.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ListingGenerator <file> <rows> [seed] [panelRatio] [malformedRate]");
+            System.exit(2);
+        }
+        ListingGenerator generator = new ListingGenerator();
+        if (args.length > 2) generator.setSeed(Long.parseLong(args[2]));
+        if (args.length > 3) generator.setPanelRatio(Double.parseDouble(args[3]));
+        if (args.length > 4) generator.setMalformedRate(Double.parseDouble(args[4]));
+
+        Path file = Path.of(args[0]);
+        long rows = Long.parseLong(args[1]);
+        long started = System.nanoTime();
+        generator.generate(file, rows);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long bytes = Files.size(file);
+        System.out.printf("Wrote %d rows, %d bytes in %.2f s (%.1f MB/s)%n",
+                rows, bytes, seconds, bytes / (1024.0 * 1024.0) / seconds);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] sums = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0 || Double.isNaN(weights[i])) throw new IllegalArgumentException("Invalid weight: " + weights[i]);
+            sum += weights[i];
+            sums[i] = sum;
+        }
+        if (sum <= 0) throw new IllegalArgumentException("Weights must not all be zero");
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] /= sum;
+        }
+        return sums;
+    }
+
+    private static int pick(double[] cumulative, SplittableRandom random) {
+        double r = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] <= r) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static int between(SplittableRandom random, int min, int max) {
+        return min + random.nextInt(max - min + 1);
+    }
+
+    private static int put(byte[] buffer, int pos, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    private static int putInt(byte[] buffer, int pos, int value) {
+        if (value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) digits++;
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static double fraction(double value, String name) {
+        if (!(value >= 0 && value <= 1)) throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        return value;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
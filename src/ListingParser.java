@@ -0,0 +1,405 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor-based parser for the {@code #}-delimited listing format:
+ * <pre>
+ * REALESTATE#city#price#sqm#rooms#GENRE
+ * PANEL#city#price#sqm#rooms#GENRE#floor#yes|no
+ * </pre>
+ * A PANEL line without a non-empty field after the floor is a plain
+ * listing, as when lines were split with {@link String#split}, which drops
+ * trailing empty fields.
+ * Fields are read straight from the UTF-8 bytes of a buffer. Numbers are
+ * parsed in place, genres are matched against pre-encoded names and city
+ * names are resolved to their {@link CityDictionary} ID, so a well-formed
+ * line is parsed without allocating. Lines whose total price would not fit
+ * in a {@code long} under the largest modifiers of the current
+ * {@link PricingRules} are rejected as malformed.
+ * <p>
+ * A parser keeps per-instance state and must not be shared between threads.
+ */
+class ListingParser {
+
+    private static final byte SEPARATOR = '#';
+    private static final byte[] PANEL = ascii("PANEL");
+    private static final Genre[] GENRES = Genre.values();
+    private static final byte[][] GENRE_NAMES = new byte[GENRES.length][];
+    private static final byte[] YES = ascii("yes");
+
+    /** Powers of ten that are exact doubles, for correctly rounded decimals. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static {
+        for (int i = 0; i < GENRES.length; i++) {
+            GENRE_NAMES[i] = ascii(GENRES[i].name());
+        }
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final CityTable cities = new CityTable();
+
+    private ByteBuffer buf;
+    private int pos;
+    private int end;
+    private String error;
+
+    /**
+     * Parses one line into the given record.
+     *
+     * @param buffer The buffer holding the line.
+     * @param start Index of the first byte of the line.
+     * @param lineEnd Index just past the last byte of the line, excluding the newline.
+     * @param out The record to fill.
+     * @return true if the line was a valid listing, false otherwise (see {@link #error()}).
+     */
+    public boolean parse(ByteBuffer buffer, int start, int lineEnd, ListingRecord out) {
+        this.buf = buffer;
+        this.pos = start;
+        this.end = lineEnd > start && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+        this.error = null;
+
+        boolean panel = fieldEquals(PANEL);
+        if (!skipField()) return fail("missing city");
+        int cityId = cityField();
+        if (cityId < 0) return fail("missing city");
+        double price = doubleField();
+        if (!Money.isRepresentable(price)) return fail("invalid price");
+        long sqm = intField();
+        if (sqm == Long.MIN_VALUE) return fail("invalid sqm");
+        double numberOfRooms = doubleField();
+        if (Double.isNaN(numberOfRooms)) return fail("invalid number of rooms");
+        Genre genre = genreField();
+        if (genre == null) return fail("invalid genre");
+
+        out.panel = false;
+        out.floor = 0;
+        out.insulated = false;
+        if (panel) {
+            int floorStart = pos;
+            if (skipField() && hasContent()) {
+                pos = floorStart;
+                long floor = intField();
+                if (floor == Long.MIN_VALUE) return fail("invalid floor");
+                out.panel = true;
+                out.floor = (int) floor;
+                out.insulated = fieldEqualsIgnoreCase(YES);
+            }
+        }
+        long priceMinor = Money.of(price);
+        if (!PricingRules.current().canPrice(priceMinor, (int) sqm)) return fail("total price out of range");
+        out.cityId = cityId;
+        out.price = priceMinor;
+        out.sqm = (int) sqm;
+        out.numberOfRooms = numberOfRooms;
+        out.genre = genre;
+        return true;
+    }
+
+    /**
+     * Describes why the last call to {@code parse} failed.
+     *
+     * @return The failure reason, or null if the last line was valid.
+     */
+    public String error() {
+        return error;
+    }
+
+    /**
+     * Checks whether a line holds only whitespace.
+     *
+     * @param buffer The buffer holding the line.
+     * @param start Index of the first byte of the line.
+     * @param end Index just past the last byte of the line.
+     * @return true if the line is blank.
+     */
+    static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t' && b != '\r') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a line for error messages.
+     *
+     * @param buffer The buffer holding the line.
+     * @param start Index of the first byte of the line.
+     * @param end Index just past the last byte of the line.
+     * @return The line as a String.
+     */
+    static String text(ByteBuffer buffer, int start, int end) {
+        byte[] line = new byte[end - start];
+        buffer.get(start, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    private boolean fail(String reason) {
+        error = reason;
+        return false;
+    }
+
+    /** Index of the next separator at or after {@code pos}, or {@code end}. */
+    private int fieldEnd() {
+        int i = pos;
+        while (i < end && buf.get(i) != SEPARATOR) i++;
+        return i;
+    }
+
+    /** Moves the cursor past the current field; false if there is no next field. */
+    private boolean skipField() {
+        int stop = fieldEnd();
+        pos = stop + 1;
+        return stop < end;
+    }
+
+    /** Whether anything but separators is left after the cursor. */
+    private boolean hasContent() {
+        for (int i = pos; i < end; i++) {
+            if (buf.get(i) != SEPARATOR) return true;
+        }
+        return false;
+    }
+
+    private boolean fieldEquals(byte[] expected) {
+        int stop = fieldEnd();
+        if (stop - pos != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (buf.get(pos + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private boolean fieldEqualsIgnoreCase(byte[] expected) {
+        int stop = fieldEnd();
+        if (stop - pos != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if ((buf.get(pos + i) | 0x20) != (expected[i] | 0x20)) return false;
+        }
+        return true;
+    }
+
+    private int cityField() {
+        int stop = fieldEnd();
+        if (stop >= end) return -1;
+        int cityId = cities.idOf(buf, pos, stop);
+        pos = stop + 1;
+        return cityId;
+    }
+
+    private Genre genreField() {
+        int stop = fieldEnd();
+        int length = stop - pos;
+        for (int g = 0; g < GENRE_NAMES.length; g++) {
+            if (GENRE_NAMES[g].length == length && fieldEquals(GENRE_NAMES[g])) {
+                pos = stop + 1;
+                return GENRES[g];
+            }
+        }
+        return null;
+    }
+
+    /** Parses a signed decimal integer field; {@code Long.MIN_VALUE} if invalid. */
+    private long intField() {
+        int stop = fieldEnd();
+        int i = pos;
+        boolean negative = i < stop && buf.get(i) == '-';
+        if (negative || (i < stop && buf.get(i) == '+')) i++;
+        if (i == stop) return Long.MIN_VALUE;
+        long value = 0;
+        for (; i < stop; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9) return Long.MIN_VALUE;
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) return Long.MIN_VALUE;
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) return Long.MIN_VALUE;
+        pos = stop + 1;
+        return value;
+    }
+
+    /**
+     * Parses a decimal field such as {@code 250000} or {@code 3.5}; NaN if
+     * invalid. Inputs that cannot be converted exactly in place (exponents,
+     * very long mantissas) fall back to {@link Double#parseDouble}.
+     */
+    private double doubleField() {
+        int stop = fieldEnd();
+        if (stop == pos) return Double.NaN;
+        int i = pos;
+        boolean negative = buf.get(i) == '-';
+        if (negative || buf.get(i) == '+') i++;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < stop; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || mantissa >= MAX_EXACT_MANTISSA / 10) {
+                return slowDouble(stop);
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+        if (digits == 0) return Double.NaN;
+        double value = mantissa;
+        if (fractionDigits > 0) {
+            if (fractionDigits >= POWERS_OF_TEN.length) return slowDouble(stop);
+            value /= POWERS_OF_TEN[fractionDigits];
+        }
+        pos = stop + 1;
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int stop) {
+        String text = new String(bytes(pos, stop), StandardCharsets.UTF_8);
+        try {
+            double value = Double.parseDouble(text);
+            pos = stop + 1;
+            return value;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private byte[] bytes(int from, int to) {
+        byte[] copy = new byte[to - from];
+        buf.get(from, copy);
+        return copy;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Open-addressing table from the UTF-8 bytes of a city name to its
+     * {@link CityDictionary} ID, so repeated cities resolve without decoding
+     * or hashing a String.
+     */
+    private static final class CityTable {
+
+        private byte[][] keys = new byte[64][];
+        private int[] values = new int[64];
+        private int[] hashes = new int[64];
+        private int count;
+
+        int idOf(ByteBuffer buf, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buf.get(i);
+            }
+            int mask = keys.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    byte[] copy = new byte[to - from];
+                    buf.get(from, copy);
+                    int id = CityDictionary.idOf(new String(copy, StandardCharsets.UTF_8));
+                    insert(slot, copy, id, hash);
+                    return id;
+                }
+                if (hashes[slot] == hash && matches(key, buf, from, to)) {
+                    return values[slot];
+                }
+            }
+        }
+
+        private void insert(int slot, byte[] key, int value, int hash) {
+            keys[slot] = key;
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++count * 2 > keys.length) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            int[] oldValues = values;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            values = new int[keys.length];
+            hashes = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buf, int from, int to) {
+            if (key.length != to - from) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buf.get(from + i)) return false;
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
+
+/**
+ * Mutable holder for the fields of one parsed listing line. A single record
+ * is reused for every line a parser reads.
+ */
+class ListingRecord {
+
+    boolean panel;
+    int cityId;
+    /** Price per square meter in {@link Money} minor units. */
+    long price;
+    int sqm;
+    double numberOfRooms;
+    Genre genre;
+    int floor;
+    boolean insulated;
+    /** Offset of the line in its file, where the loader tracks it. */
+    long offset;
+
+    /**
+     * Creates the model object described by this record.
+     *
+     * @return A Panel for panel lines, a RealEstate otherwise.
+     */
+    RealEstate toRealEstate() {
+        if (panel) {
+            return new Panel(cityId, price, sqm, numberOfRooms, genre, floor, insulated);
+        }
+        return new RealEstate(cityId, price, sqm, numberOfRooms, genre);
+    }
+
+    /**
+     * Calculates the total price of the listing described by this record.
+     *
+     * @param rules The pricing rules to apply.
+     * @return The total price in minor units.
+     */
+    long totalPrice(PricingRules rules) {
+        return rules.totalPrice(cityId, price, sqm, panel, floor, insulated);
+    }
+
+    @Override
+    public String toString() {
+        return (panel ? "PANEL" : "REALESTATE") + "#" + CityDictionary.nameOf(cityId) + "#" + Money.format(price) + "#" + sqm + "#"
+                + numberOfRooms + "#" + genre + (panel ? "#" + floor + "#" + (insulated ? "yes" : "no") : "");
+    }
+}
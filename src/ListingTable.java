@@ -0,0 +1,188 @@
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Row-oriented access to listings kept in a column layout rather than as
+ * {@link RealEstate} objects. Rows are numbered from 0 to size() - 1.
+ */
+interface ListingTable {
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return The number of listings.
+     */
+    int size();
+
+    boolean isPanel(int row);
+
+    int cityId(int row);
+
+    /**
+     * Returns the price per square meter of a row.
+     *
+     * @param row The row.
+     * @return The price in {@link Money} minor units.
+     */
+    long price(int row);
+
+    int sqm(int row);
+
+    double numberOfRooms(int row);
+
+    Genre genre(int row);
+
+    int floor(int row);
+
+    boolean isInsulated(int row);
+
+    /**
+     * Overwrites the price per square meter of a row.
+     *
+     * @param row The row.
+     * @param price The new price per square meter in minor units.
+     */
+    void setPrice(int row, long price);
+
+    /**
+     * Calculates the total price of a row under the given rules.
+     *
+     * @param row The row.
+     * @param rules The pricing rules to apply.
+     * @return The total price in minor units.
+     */
+    default long totalPrice(int row, PricingRules rules) {
+        return rules.totalPrice(cityId(row), price(row), sqm(row), isPanel(row), floor(row), isInsulated(row));
+    }
+
+    /**
+     * Returns a reusable view positioned on the first row.
+     *
+     * @return A flyweight view over this table.
+     */
+    default ListingView view() {
+        return new ListingView(this);
+    }
+}
+
+/**
+ * Flyweight that presents one row of a {@link ListingTable} as a property.
+ * A single view is moved from row to row with {@link #moveTo(int)}, so
+ * iterating a table through it allocates nothing per row.
+ */
+class ListingView implements PropertyInterface {
+
+    private static final Logger logger = Logger.getLogger(ListingView.class.getName());
+
+    private final ListingTable table;
+    private int row;
+
+    /**
+     * Creates a view on the first row of a table.
+     *
+     * @param table The table to view.
+     */
+    public ListingView(ListingTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Positions the view on a row.
+     *
+     * @param row The row to view.
+     * @return This view.
+     */
+    public ListingView moveTo(int row) {
+        this.row = row;
+        return this;
+    }
+
+    public int row() {
+        return row;
+    }
+
+    public boolean isPanel() {
+        return table.isPanel(row);
+    }
+
+    public String getCity() {
+        return CityDictionary.nameOf(table.cityId(row));
+    }
+
+    public double getPrice() {
+        return Money.toUnits(table.price(row));
+    }
+
+    public int getSqm() {
+        return table.sqm(row);
+    }
+
+    public double getNumberOfRooms() {
+        return table.numberOfRooms(row);
+    }
+
+    public Genre getGenre() {
+        return table.genre(row);
+    }
+
+    public int getFloor() {
+        return table.floor(row);
+    }
+
+    public boolean isInsulated() {
+        return table.isInsulated(row);
+    }
+
+    /**
+     * Applies a discount to the price of the current row. Like
+     * {@link RealEstate#makeDiscount(int)}, an out-of-range percentage is
+     * logged and leaves the price unchanged.
+     *
+     * @param percentage The discount percentage (0–100).
+     */
+    @Override
+    public void makeDiscount(int percentage) {
+        if (percentage < 0 || percentage > 100) {
+            logger.log(Level.SEVERE, "Error applying discount",
+                    new IllegalArgumentException("Invalid discount: " + percentage));
+            return;
+        }
+        table.setPrice(row, Money.discount(table.price(row), percentage));
+    }
+
+    @Override
+    public long getTotalPrice() {
+        return table.totalPrice(row, PricingRules.current());
+    }
+
+    @Override
+    public double averageSqmPerRoom() {
+        return ReportSummary.sqmPerRoom(table.sqm(row), table.numberOfRooms(row));
+    }
+
+    /**
+     * Copies the current row into a standalone model object.
+     *
+     * @return A Panel for panel rows, a RealEstate otherwise.
+     */
+    public RealEstate toRealEstate() {
+        if (isPanel()) {
+            return new Panel(table.cityId(row), table.price(row), getSqm(), getNumberOfRooms(), getGenre(), getFloor(), isInsulated());
+        }
+        return new RealEstate(table.cityId(row), table.price(row), getSqm(), getNumberOfRooms(), getGenre());
+    }
+
+    @Override
+    public String toString() {
+        if (isPanel()) {
+            return String.format(
+                    "Panel - City: %s, Price/sqm: %s, Area: %d sqm, Rooms: %.1f, Genre: %s, Floor: %d, Insulated: %s, Total Price: %s, Avg sqm/room: %.2f",
+                    getCity(), Money.format(table.price(row)), getSqm(), getNumberOfRooms(), getGenre(), getFloor(),
+                    (isInsulated() ? "yes" : "no"), Money.format(getTotalPrice()), averageSqmPerRoom());
+        }
+        return String.format(
+                "City: %s, Price/sqm: %s, Area: %d sqm, Rooms: %.1f, Genre: %s, Total Price: %s, Avg sqm/room: %.2f",
+                getCity(), Money.format(table.price(row)), getSqm(), getNumberOfRooms(), getGenre(),
+                Money.format(getTotalPrice()), averageSqmPerRoom());
+    }
+}
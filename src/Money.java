@@ -0,0 +1,128 @@
+/**
+ * Fixed-point money arithmetic on {@code long} amounts in minor units
+ * (hundredths of the currency unit), used for prices, totals and report sums.
+ * <p>
+ * All operations are static and work on primitives, so they allocate
+ * nothing. Rates such as city and panel modifiers are expressed in basis
+ * points (1/10000); applying a rate rounds half away from zero to the nearest
+ * minor unit. Every operation throws {@link ArithmeticException} instead of
+ * silently wrapping around when a result does not fit in a {@code long}.
+ */
+final class Money {
+
+    /** Minor units per currency unit. */
+    static final long SCALE = 100;
+    /** Basis points in a rate of 1.0. */
+    static final int RATE_SCALE = 10_000;
+
+    private static final double MAX_UNITS = (double) Long.MAX_VALUE / SCALE;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount in currency units to minor units, rounding to the
+     * nearest minor unit.
+     *
+     * @param units The amount in currency units.
+     * @return The amount in minor units.
+     * @throws ArithmeticException If the amount is not finite or out of range.
+     */
+    static long of(double units) {
+        if (!isRepresentable(units)) {
+            throw new ArithmeticException("Amount out of range: " + units);
+        }
+        return Math.round(units * SCALE);
+    }
+
+    /**
+     * Checks whether an amount in currency units can be converted with
+     * {@link #of(double)}.
+     *
+     * @param units The amount in currency units.
+     * @return true if the amount is finite and in range, false otherwise.
+     */
+    static boolean isRepresentable(double units) {
+        return units > -MAX_UNITS && units < MAX_UNITS;
+    }
+
+    /**
+     * Converts an amount in minor units to currency units.
+     *
+     * @param minor The amount in minor units.
+     * @return The amount in currency units, possibly rounded.
+     */
+    static double toUnits(long minor) {
+        return (double) minor / SCALE;
+    }
+
+    /**
+     * Multiplies an amount by a whole quantity, e.g. a price per square meter
+     * by an area.
+     *
+     * @param minor The amount in minor units.
+     * @param quantity The quantity.
+     * @return The product in minor units.
+     */
+    static long times(long minor, long quantity) {
+        return Math.multiplyExact(minor, quantity);
+    }
+
+    /**
+     * Converts a rate such as 1.05 to basis points.
+     *
+     * @param rate The rate.
+     * @return The rate in basis points.
+     */
+    static int basisPoints(double rate) {
+        return Math.toIntExact(Math.round(rate * RATE_SCALE));
+    }
+
+    /**
+     * Multiplies an amount by a rate. The result is exact up to the final
+     * rounding, even when {@code minor * basisPoints} itself would overflow.
+     *
+     * @param minor The amount in minor units.
+     * @param basisPoints The rate in basis points.
+     * @return The scaled amount in minor units.
+     */
+    static long applyRate(long minor, int basisPoints) {
+        long whole = minor / RATE_SCALE;
+        long rest = minor % RATE_SCALE;
+        // |rest * basisPoints| < 10^4 * 2^31, so this product cannot overflow.
+        long fraction = rest * basisPoints;
+        long half = fraction < 0 ? -(RATE_SCALE / 2) : RATE_SCALE / 2;
+        return Math.addExact(Math.multiplyExact(whole, basisPoints), (fraction + half) / RATE_SCALE);
+    }
+
+    /**
+     * Reduces an amount by a percentage.
+     *
+     * @param minor The amount in minor units.
+     * @param percentage The discount percentage (0–100).
+     * @return The discounted amount in minor units.
+     */
+    static long discount(long minor, int percentage) {
+        return applyRate(minor, (100 - percentage) * (RATE_SCALE / 100));
+    }
+
+    /**
+     * Formats an amount as currency units with two decimals, e.g. "1234.50".
+     *
+     * @param minor The amount in minor units.
+     * @return The formatted amount.
+     */
+    static String format(long minor) {
+        StringBuilder text = new StringBuilder(24);
+        if (minor < 0) {
+            text.append('-');
+        }
+        long units = Math.abs(minor / SCALE);
+        long cents = Math.abs(minor % SCALE);
+        text.append(units).append('.');
+        if (cents < 10) {
+            text.append('0');
+        }
+        return text.append(cents).toString();
+    }
+}
@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of the changes made to the listings of a
+ * {@link PropertyStore}, replayed on startup on top of the listings loaded
+ * from the listing file or its {@link Snapshot}.
+ * <p>
+ * The log listens to the store's mutation hooks. Each added or changed
+ * listing is logged as a 35-byte image of its fields, a removal as its ID,
+ * and a city name the first time its {@link CityDictionary} ID is used.
+ * Appending only copies the record into a buffer; a background thread
+ * writes the records gathered since its last round as one checksummed frame
+ * and fsyncs once per frame (group commit), so a burst of changes costs one
+ * fsync rather than one each. A change is durable once the flush after it
+ * completes, at most about one flush interval later; {@link #sync()} waits
+ * for that.
+ * <p>
+ * Listing IDs in the log are those of the store after loading, so the log
+ * header records the size and modification time of the listing file and the
+ * checkpoint number of the {@link Snapshot} it continues, and a log written
+ * for another version of the file or another checkpoint is discarded when
+ * opened. A frame torn by a crash fails its checksum and is cut off with
+ * everything after it.
+ * <p>
+ * Once replayed changes are applied, they are checkpointed: the store is
+ * saved to a snapshot with the next checkpoint number and the log is emptied
+ * and stamped with that number. A crash between the two steps leaves a log
+ * with the old number, which is then discarded, since its changes are
+ * already in the snapshot. A log that does not match the store fails to
+ * open, having possibly applied part of its changes.
+ */
+final class MutationLog implements PropertyStore.MutationListener, AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(MutationLog.class.getName());
+
+    static final int VERSION = 1;
+    private static final int MAGIC = 0x474F4C57; // "WLOG" in little-endian order
+    private static final int HEADER_SIZE = 32;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+    /** Buffered bytes that start a flush without waiting for the interval. */
+    private static final int FLUSH_THRESHOLD = 1 << 20;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+    private static final byte CITY = 4;
+    private static final byte PANEL_FLAG = 1;
+    private static final byte INSULATED_FLAG = 2;
+    private static final Genre[] GENRES = Genre.values();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long flushIntervalMillis;
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32();
+    /** Cities whose names have been logged since the log was opened. */
+    private final BitSet loggedCities = new BitSet();
+
+    private ByteBuffer pending = newBuffer(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = newBuffer(INITIAL_BUFFER_SIZE);
+    /** Number of records appended, and the number of them known to be on disk. */
+    private long appended;
+    private long durable;
+    private boolean closed;
+    private IOException failure;
+
+    private MutationLog(Path file, FileChannel channel, long flushIntervalMillis) {
+        this.file = file;
+        this.channel = channel;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flusher = new Thread(this::flushLoop, "mutation-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns where the log of a listing file is kept: next to it, with
+     * ".wal" appended to its name.
+     *
+     * @param listingFile The listing file.
+     * @return The log path.
+     */
+    static Path pathFor(Path listingFile) {
+        return listingFile.resolveSibling(listingFile.getFileName() + ".wal");
+    }
+
+    /**
+     * Opens the log of a store, replays the changes it holds into the store,
+     * checkpoints them and attaches the log to the store to log every later
+     * change.
+     *
+     * @param file The log file; created if missing.
+     * @param snapshot The snapshot file the replayed changes are checkpointed to.
+     * @param source Identity of the listing file the store was loaded from.
+     * @param checkpoint Checkpoint number of the snapshot the store was loaded
+     *                   from; 0 if it was loaded from the listing file.
+     * @param store The store, holding exactly the listings of that snapshot.
+     * @return The open log.
+     * @throws IOException If the log cannot be read or written, or does not
+     *                     match the listings of the store; the store may then
+     *                     hold part of the logged changes.
+     */
+    static MutationLog open(Path file, Path snapshot, Snapshot.Source source, int checkpoint, PropertyStore store)
+            throws IOException {
+        return open(file, snapshot, source, checkpoint, store, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the log of a store with the given group commit interval.
+     *
+     * @see #open(Path, Path, Snapshot.Source, int, PropertyStore)
+     */
+    static MutationLog open(Path file, Path snapshot, Snapshot.Source source, int checkpoint, PropertyStore store,
+                            long flushIntervalMillis) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long end = HEADER_SIZE;
+            ByteBuffer header = newBuffer(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.position() == HEADER_SIZE && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getLong(8) == source.size() && header.getLong(16) == source.modified()
+                    && header.getLong(24) == checkpoint) {
+                end = replay(channel, store);
+                if (end > HEADER_SIZE && saveCheckpoint(snapshot, source, checkpoint + 1, store)) {
+                    // The replayed changes are in the new snapshot; the log starts over from it.
+                    writeHeader(channel, source, checkpoint + 1);
+                    end = HEADER_SIZE;
+                }
+            } else {
+                if (channel.size() > 0) {
+                    logger.warning("Discarding mutation log " + file
+                            + " written for another version of the listing file or another checkpoint");
+                }
+                writeHeader(channel, source, checkpoint);
+            }
+            if (channel.size() > end) {
+                logger.warning("Cutting off a torn tail of mutation log " + file + " at byte " + end);
+                channel.truncate(end);
+            }
+            channel.force(true);
+            channel.position(end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        MutationLog log = new MutationLog(file, channel, flushIntervalMillis);
+        store.setMutationListener(log);
+        return log;
+    }
+
+    /**
+     * Saves the store to a snapshot at the given checkpoint.
+     *
+     * @return true if the snapshot was written; false if the replayed changes
+     *         stay in the log.
+     */
+    private static boolean saveCheckpoint(Path snapshot, Snapshot.Source source, int checkpoint, PropertyStore store) {
+        try {
+            Snapshot.write(snapshot, source, store, checkpoint);
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing checkpoint " + checkpoint + ", keeping the replayed changes in the log", e);
+            return false;
+        }
+    }
+
+    /** Empties the log and writes its header. */
+    private static void writeHeader(FileChannel channel, Snapshot.Source source, int checkpoint) throws IOException {
+        ByteBuffer header = newBuffer(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(source.size()).putLong(source.modified()).putLong(checkpoint);
+        header.flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Applies the intact frames of the log to the store.
+     *
+     * @return The offset just past the last intact frame.
+     */
+    private static long replay(FileChannel channel, PropertyStore store) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Mutation log too large to replay: " + size + " bytes");
+        ByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        int[] cityIds = new int[0];
+        long records = 0;
+        int position = HEADER_SIZE;
+        while (log.limit() - position >= FRAME_HEADER_SIZE) {
+            int length = log.getInt(position);
+            if (length <= 0 || length > log.limit() - position - FRAME_HEADER_SIZE) break;
+            ByteBuffer frame = log.slice(position + FRAME_HEADER_SIZE, length).order(ByteOrder.LITTLE_ENDIAN);
+            crc.reset();
+            crc.update(frame.duplicate());
+            if ((int) crc.getValue() != log.getInt(position + 4)) break;
+
+            while (frame.hasRemaining()) {
+                byte type = frame.get();
+                if (type == CITY) {
+                    int loggedId = frame.getInt();
+                    byte[] name = new byte[Short.toUnsignedInt(frame.getShort())];
+                    frame.get(name);
+                    if (loggedId >= cityIds.length) cityIds = Arrays.copyOf(cityIds, Math.max(loggedId + 1, cityIds.length * 2));
+                    cityIds[loggedId] = CityDictionary.idOf(new String(name, StandardCharsets.UTF_8));
+                    continue;
+                }
+                int id = frame.getInt();
+                if (type == REMOVE) {
+                    if (id >= store.idLimit() || !store.remove(id)) throw mismatch(id);
+                } else if (type == ADD || type == UPDATE) {
+                    byte flags = frame.get();
+                    int cityId = cityIds[frame.getInt()];
+                    long price = frame.getLong();
+                    int sqm = frame.getInt();
+                    double rooms = frame.getDouble();
+                    Genre genre = GENRES[frame.get()];
+                    int floor = frame.getInt();
+                    boolean panel = (flags & PANEL_FLAG) != 0;
+                    boolean insulated = (flags & INSULATED_FLAG) != 0;
+                    if (type == ADD) {
+                        RealEstate property = panel
+                                ? new Panel(cityId, price, sqm, rooms, genre, floor, insulated)
+                                : new RealEstate(cityId, price, sqm, rooms, genre);
+                        if (store.add(property) != id) throw mismatch(id);
+                    } else {
+                        RealEstate property = id < store.idLimit() ? store.get(id) : null;
+                        if (property == null || (property instanceof Panel) != panel) throw mismatch(id);
+                        property.restore(cityId, price, sqm, rooms, genre, floor, insulated);
+                    }
+                } else {
+                    throw new IOException("Unknown mutation log record type " + type);
+                }
+                records++;
+            }
+            position += FRAME_HEADER_SIZE + length;
+        }
+        logger.info("Replayed " + records + " logged changes");
+        return position;
+    }
+
+    private static IOException mismatch(int id) {
+        return new IOException("Mutation log does not match the loaded listings at listing " + id);
+    }
+
+    @Override
+    public void added(int id, RealEstate property) {
+        appendRow(ADD, id, property);
+    }
+
+    @Override
+    public void updated(int id, RealEstate property) {
+        appendRow(UPDATE, id, property);
+    }
+
+    /**
+     * Logs a batch of changed listings under one lock, waking the flusher
+     * once.
+     */
+    @Override
+    public synchronized void updatedAll(List<RealEstate> properties) {
+        for (RealEstate property : properties) {
+            appendRow(UPDATE, property.storeId, property);
+        }
+    }
+
+    @Override
+    public synchronized void removed(int id) {
+        if (!accepting()) return;
+        ensure(5);
+        pending.put(REMOVE).putInt(id);
+        appended();
+    }
+
+    private synchronized void appendRow(byte type, int id, RealEstate property) {
+        if (!accepting()) return;
+        int cityId = property.getCityId();
+        if (!loggedCities.get(cityId)) {
+            byte[] name = CityDictionary.nameOf(cityId).getBytes(StandardCharsets.UTF_8);
+            ensure(7 + name.length);
+            pending.put(CITY).putInt(cityId).putShort((short) name.length).put(name);
+            loggedCities.set(cityId);
+        }
+        byte flags = 0;
+        int floor = 0;
+        if (property instanceof Panel panel) {
+            flags = (byte) (PANEL_FLAG | (panel.isInsulated() ? INSULATED_FLAG : 0));
+            floor = panel.getFloor();
+        }
+        ensure(35);
+        pending.put(type).putInt(id).put(flags).putInt(cityId).putLong(property.getPriceMinor())
+                .putInt(property.getSqm()).putDouble(property.getNumberOfRooms())
+                .put((byte) property.getGenre().ordinal()).putInt(floor);
+        appended();
+    }
+
+    /**
+     * Waits until every change logged so far is on disk.
+     *
+     * @throws IOException If the log could not be written.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    synchronized void sync() throws IOException, InterruptedException {
+        long target = appended;
+        notifyAll();
+        while (durable < target && failure == null) {
+            wait();
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Writes the remaining changes, stops the flusher and closes the file.
+     *
+     * @throws IOException If the log could not be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    private boolean accepting() {
+        if (closed) throw new IllegalStateException("Mutation log " + file + " is closed");
+        return failure == null;
+    }
+
+    private void appended() {
+        // Wake the flusher for the first record of a group or when the buffer is large.
+        if (appended++ == durable || pending.position() >= FLUSH_THRESHOLD) {
+            notifyAll();
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (pending.remaining() < bytes) {
+            pending = newBuffer(Math.max(pending.capacity() * 2, pending.position() + bytes)).put(pending.flip());
+        }
+    }
+
+    private void flushLoop() {
+        ByteBuffer frameHeader = newBuffer(FRAME_HEADER_SIZE);
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            synchronized (this) {
+                try {
+                    while (pending.position() == 0 && !closed) {
+                        wait();
+                    }
+                    if (!closed && pending.position() < FLUSH_THRESHOLD) {
+                        // Let concurrent changes join this group.
+                        wait(flushIntervalMillis);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (pending.position() == 0) {
+                    durable = appended;
+                    notifyAll();
+                    if (closed) return;
+                    continue;
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                batchEnd = appended;
+            }
+
+            try {
+                batch.flip();
+                crc.reset();
+                crc.update(batch.array(), batch.arrayOffset(), batch.limit());
+                frameHeader.clear();
+                frameHeader.putInt(batch.limit()).putInt((int) crc.getValue()).flip();
+                ByteBuffer[] frame = {frameHeader, batch};
+                while (batch.hasRemaining()) {
+                    channel.write(frame);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing mutation log " + file + ", changes are no longer logged", e);
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+
+            synchronized (this) {
+                durable = batchEnd;
+                notifyAll();
+            }
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,259 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Listing store whose data lives outside the Java heap, so garbage
+ * collection cost does not grow with the inventory.
+ * <p>
+ * Each listing is a fixed-width 32-byte record in a {@link MemorySegment};
+ * the city is stored as its {@link CityDictionary} ID and the price in
+ * {@link Money} minor units. The store implements
+ * {@link ListingTable}, so {@link ListingView} provides
+ * {@code getTotalPrice}, {@code averageSqmPerRoom} and {@code makeDiscount}
+ * over the records.
+ * <p>
+ * All segments come from one shared {@link Arena} that lives as long as the
+ * store. Growing doubles the capacity into a new segment of that arena, and
+ * the outgrown segments are only freed when the store is closed, so resizing
+ * never closes an arena; {@link #reserve(int)} sizes the store up front when
+ * the number of records is known. Rows may be read from several threads at
+ * once, but appending must happen on one thread with no concurrent readers,
+ * since growing moves the records to a new segment. Closing the store frees
+ * its memory; it must not be used afterwards.
+ */
+class OffHeapStore implements ListingTable, BulkLoader.RecordSink, AutoCloseable {
+
+    static final StructLayout RECORD = MemoryLayout.structLayout(
+            ValueLayout.JAVA_LONG.withName("price"),
+            ValueLayout.JAVA_DOUBLE.withName("rooms"),
+            ValueLayout.JAVA_INT.withName("sqm"),
+            ValueLayout.JAVA_INT.withName("cityId"),
+            ValueLayout.JAVA_INT.withName("floor"),
+            ValueLayout.JAVA_BYTE.withName("genre"),
+            ValueLayout.JAVA_BYTE.withName("flags"),
+            MemoryLayout.paddingLayout(2));
+
+    private static final long RECORD_SIZE = RECORD.byteSize();
+    private static final long PRICE = offset("price");
+    private static final long ROOMS = offset("rooms");
+    private static final long SQM = offset("sqm");
+    private static final long CITY_ID = offset("cityId");
+    private static final long FLOOR = offset("floor");
+    private static final long GENRE = offset("genre");
+    private static final long FLAGS = offset("flags");
+
+    private static final byte PANEL_FLAG = 1;
+    private static final byte INSULATED_FLAG = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Genre[] GENRES = Genre.values();
+
+    private final Arena arena = Arena.ofShared();
+    private MemorySegment records;
+    private int capacity;
+    private int size;
+
+    /**
+     * Creates an empty store.
+     */
+    public OffHeapStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the given number of records.
+     *
+     * @param expectedSize Number of records the store should hold without resizing.
+     */
+    public OffHeapStore(int expectedSize) {
+        capacity = Math.max(expectedSize, INITIAL_CAPACITY);
+        records = arena.allocate(RECORD_SIZE * capacity, RECORD.byteAlignment());
+    }
+
+    /**
+     * Appends a parsed listing.
+     *
+     * @param record The parsed fields.
+     */
+    @Override
+    public void accept(ListingRecord record) {
+        append(record.panel, record.cityId, record.price, record.sqm,
+                record.numberOfRooms, record.genre, record.floor, record.insulated);
+    }
+
+    /**
+     * Appends a copy of a model object's fields.
+     *
+     * @param property The listing to copy.
+     * @return The row the listing was stored in.
+     */
+    public int add(RealEstate property) {
+        if (property instanceof Panel panel) {
+            return append(true, panel.getCityId(), panel.getPriceMinor(), panel.getSqm(),
+                    panel.getNumberOfRooms(), panel.getGenre(), panel.getFloor(), panel.isInsulated());
+        }
+        return append(false, property.getCityId(), property.getPriceMinor(), property.getSqm(),
+                property.getNumberOfRooms(), property.getGenre(), 0, false);
+    }
+
+    /**
+     * Appends one record.
+     *
+     * @return The new record's row.
+     */
+    public int append(boolean panel, int city, long pricePerSqm, int area, double numberOfRooms,
+                      Genre genre, int panelFloor, boolean insulated) {
+        if (size == capacity) {
+            grow(size + 1);
+        }
+        int row = size++;
+        long base = row * RECORD_SIZE;
+        records.set(ValueLayout.JAVA_LONG, base + PRICE, pricePerSqm);
+        records.set(ValueLayout.JAVA_DOUBLE, base + ROOMS, numberOfRooms);
+        records.set(ValueLayout.JAVA_INT, base + SQM, area);
+        records.set(ValueLayout.JAVA_INT, base + CITY_ID, city);
+        records.set(ValueLayout.JAVA_INT, base + FLOOR, panelFloor);
+        records.set(ValueLayout.JAVA_BYTE, base + GENRE, (byte) genre.ordinal());
+        records.set(ValueLayout.JAVA_BYTE, base + FLAGS, (byte) ((panel ? PANEL_FLAG : 0) | (insulated ? INSULATED_FLAG : 0)));
+        return row;
+    }
+
+    /**
+     * Appends all records of another store with one bulk copy.
+     *
+     * @param other The store to copy from.
+     */
+    public void appendAll(OffHeapStore other) {
+        if (size + other.size > capacity) {
+            grow(size + other.size);
+        }
+        MemorySegment.copy(other.records, 0, records, size * RECORD_SIZE, other.size * RECORD_SIZE);
+        size += other.size;
+    }
+
+    /**
+     * Appends all rows of a table, e.g. a {@link ColumnarStore} parsed on the
+     * heap, growing the store at most once.
+     *
+     * @param other The table to copy from.
+     */
+    public void appendAll(ListingTable other) {
+        reserve(size + other.size());
+        for (int row = 0; row < other.size(); row++) {
+            append(other.isPanel(row), other.cityId(row), other.price(row), other.sqm(row),
+                    other.numberOfRooms(row), other.genre(row), other.floor(row), other.isInsulated(row));
+        }
+    }
+
+    /**
+     * Makes room for the given total number of records, so that appending up
+     * to that many allocates nothing.
+     *
+     * @param expectedSize Number of records the store should hold without resizing.
+     */
+    public void reserve(int expectedSize) {
+        if (expectedSize > capacity) {
+            resize(expectedSize);
+        }
+    }
+
+    /**
+     * Computes the summary report figures with one scan over the records,
+     * in parallel chunks for large stores.
+     *
+     * @return The summary.
+     */
+    public ReportSummary summarize() {
+        return ReportSummary.of(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isPanel(int row) {
+        return (flags(row) & PANEL_FLAG) != 0;
+    }
+
+    @Override
+    public int cityId(int row) {
+        return records.get(ValueLayout.JAVA_INT, row * RECORD_SIZE + CITY_ID);
+    }
+
+    @Override
+    public long price(int row) {
+        return records.get(ValueLayout.JAVA_LONG, row * RECORD_SIZE + PRICE);
+    }
+
+    @Override
+    public int sqm(int row) {
+        return records.get(ValueLayout.JAVA_INT, row * RECORD_SIZE + SQM);
+    }
+
+    @Override
+    public double numberOfRooms(int row) {
+        return records.get(ValueLayout.JAVA_DOUBLE, row * RECORD_SIZE + ROOMS);
+    }
+
+    @Override
+    public Genre genre(int row) {
+        return GENRES[records.get(ValueLayout.JAVA_BYTE, row * RECORD_SIZE + GENRE)];
+    }
+
+    @Override
+    public int floor(int row) {
+        return records.get(ValueLayout.JAVA_INT, row * RECORD_SIZE + FLOOR);
+    }
+
+    @Override
+    public boolean isInsulated(int row) {
+        return (flags(row) & INSULATED_FLAG) != 0;
+    }
+
+    @Override
+    public void setPrice(int row, long pricePerSqm) {
+        records.set(ValueLayout.JAVA_LONG, row * RECORD_SIZE + PRICE, pricePerSqm);
+    }
+
+    /**
+     * Returns the number of off-heap bytes of the current record segment.
+     *
+     * @return The reserved size in bytes.
+     */
+    public long reservedBytes() {
+        return records.byteSize();
+    }
+
+    /**
+     * Frees the off-heap memory.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private byte flags(int row) {
+        return records.get(ValueLayout.JAVA_BYTE, row * RECORD_SIZE + FLAGS);
+    }
+
+    private void grow(int required) {
+        resize(Math.max(capacity * 2, required));
+    }
+
+    /** Moves the records to a new segment of the store's arena; the old one stays allocated until close. */
+    private void resize(int newCapacity) {
+        MemorySegment newRecords = arena.allocate(RECORD_SIZE * newCapacity, RECORD.byteAlignment());
+        MemorySegment.copy(records, 0, newRecords, 0, size * RECORD_SIZE);
+        records = newRecords;
+        capacity = newCapacity;
+    }
+
+    private static long offset(String field) {
+        return RECORD.byteOffset(PathElement.groupElement(field));
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Distributions of total price and price per square meter, overall, per
+ * city and per genre, built in one pass with bounded memory.
+ * <p>
+ * Each group keeps a {@link QuantileSketch} for percentiles and a
+ * {@link Histogram} over fixed buckets for both figures. Like the other
+ * report accumulators, partial distributions of chunks, threads or separate
+ * files are merged with {@link #combine(PriceDistribution)}.
+ */
+class PriceDistribution implements BulkLoader.RecordSink {
+
+    /** Total price buckets: 5 million wide up to 100 million, in minor units. */
+    static final long[] TOTAL_PRICE_BOUNDS = Histogram.linearBounds(5_000_000 * Money.SCALE, 20);
+    /** Price per square meter buckets: 25 thousand wide up to 500 thousand, in minor units. */
+    static final long[] SQM_PRICE_BOUNDS = Histogram.linearBounds(25_000 * Money.SCALE, 20);
+
+    private static final Genre[] GENRES = Genre.values();
+
+    /**
+     * The sketches and histograms of one group of listings.
+     */
+    static final class Group {
+        final QuantileSketch totalPrice = new QuantileSketch();
+        final QuantileSketch sqmPrice = new QuantileSketch();
+        final Histogram totalPriceHistogram = new Histogram(TOTAL_PRICE_BOUNDS);
+        final Histogram sqmPriceHistogram = new Histogram(SQM_PRICE_BOUNDS);
+
+        void add(long price, long total) {
+            totalPrice.add(total);
+            sqmPrice.add(price);
+            totalPriceHistogram.add(total);
+            sqmPriceHistogram.add(price);
+        }
+
+        void combine(Group other) {
+            totalPrice.combine(other.totalPrice);
+            sqmPrice.combine(other.sqmPrice);
+            totalPriceHistogram.combine(other.totalPriceHistogram);
+            sqmPriceHistogram.combine(other.sqmPriceHistogram);
+        }
+    }
+
+    private final PricingRules rules;
+    private final Group overall = new Group();
+    private final Group[] byGenre = new Group[GENRES.length];
+    /** Groups by city ID; null for cities not seen yet. */
+    private Group[] byCity = new Group[0];
+
+    /**
+     * Creates empty distributions that price parsed records with the given rules.
+     *
+     * @param rules The pricing rules for {@link #accept(ListingRecord)}.
+     */
+    PriceDistribution(PricingRules rules) {
+        this.rules = rules;
+        for (int i = 0; i < byGenre.length; i++) {
+            byGenre[i] = new Group();
+        }
+    }
+
+    /**
+     * Builds the distributions of every listing of a store, in parallel for
+     * large stores.
+     *
+     * @param store The store to scan.
+     * @return The distributions.
+     */
+    static PriceDistribution of(PropertyStore store) {
+        PricingRules rules = PricingRules.current();
+        return store.scan(listings -> listings.collect(() -> new PriceDistribution(rules),
+                PriceDistribution::accept, PriceDistribution::combine));
+    }
+
+    /**
+     * Builds the distributions of every row of a table, in parallel chunks
+     * for large tables.
+     *
+     * @param table The table to scan.
+     * @return The distributions.
+     */
+    static PriceDistribution of(ListingTable table) {
+        PricingRules rules = PricingRules.current();
+        int size = table.size();
+        int chunks = (size + ReportSummary.SCAN_CHUNK - 1) / ReportSummary.SCAN_CHUNK;
+        return IntStream.range(0, Math.max(chunks, 1)).parallel()
+                .mapToObj(c -> {
+                    PriceDistribution distribution = new PriceDistribution(rules);
+                    int to = Math.min(size, (c + 1) * ReportSummary.SCAN_CHUNK);
+                    for (int row = c * ReportSummary.SCAN_CHUNK; row < to; row++) {
+                        distribution.accept(table.cityId(row), table.genre(row), table.price(row),
+                                table.totalPrice(row, rules));
+                    }
+                    return distribution;
+                })
+                .reduce((a, b) -> {
+                    a.combine(b);
+                    return a;
+                })
+                .orElseGet(() -> new PriceDistribution(rules));
+    }
+
+    /**
+     * Adds a parsed listing.
+     *
+     * @param record The parsed fields.
+     */
+    @Override
+    public void accept(ListingRecord record) {
+        accept(record.cityId, record.genre, record.price, record.totalPrice(rules));
+    }
+
+    /**
+     * Adds a listing, priced with these distributions' rules from its
+     * fields, so that a store scan never waits for the store to reprice it.
+     *
+     * @param property The listing to add.
+     */
+    void accept(RealEstate property) {
+        accept(property.getCityId(), property.getGenre(), property.getPriceMinor(), property.computeTotalPrice(rules));
+    }
+
+    /**
+     * Adds one listing's figures to its groups.
+     *
+     * @param cityId The listing's city ID.
+     * @param genre The listing's genre.
+     * @param price Price per square meter in minor units.
+     * @param totalPrice Total price in minor units.
+     */
+    void accept(int cityId, Genre genre, long price, long totalPrice) {
+        overall.add(price, totalPrice);
+        byGenre[genre.ordinal()].add(price, totalPrice);
+        cityGroup(cityId).add(price, totalPrice);
+    }
+
+    /**
+     * Merges another set of distributions into this one.
+     *
+     * @param other Distributions of a disjoint set of listings.
+     */
+    void combine(PriceDistribution other) {
+        overall.combine(other.overall);
+        for (int i = 0; i < byGenre.length; i++) {
+            byGenre[i].combine(other.byGenre[i]);
+        }
+        for (int cityId = 0; cityId < other.byCity.length; cityId++) {
+            if (other.byCity[cityId] != null) {
+                cityGroup(cityId).combine(other.byCity[cityId]);
+            }
+        }
+    }
+
+    Group overall() {
+        return overall;
+    }
+
+    Group genre(Genre genre) {
+        return byGenre[genre.ordinal()];
+    }
+
+    /**
+     * Returns the distributions of one city.
+     *
+     * @param cityId A city ID.
+     * @return The group, or null if no listing of the city was seen.
+     */
+    Group city(int cityId) {
+        return cityId < byCity.length ? byCity[cityId] : null;
+    }
+
+    /**
+     * Returns the IDs of the cities with at least one listing, in ID order.
+     *
+     * @return A new array of city IDs.
+     */
+    int[] cityIds() {
+        return IntStream.range(0, byCity.length).filter(cityId -> byCity[cityId] != null).toArray();
+    }
+
+    private Group cityGroup(int cityId) {
+        if (cityId >= byCity.length) {
+            byCity = Arrays.copyOf(byCity, Math.max(cityId + 1, byCity.length * 2));
+        }
+        Group group = byCity[cityId];
+        if (group == null) {
+            group = byCity[cityId] = new Group();
+        }
+        return group;
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable set of pricing rules: a modifier per city, looked up by
+ * {@link CityDictionary} ID, and the floor and insulation modifiers of panels.
+ * Modifiers are held in basis points and prices in {@link Money} minor units,
+ * so total prices are computed exactly in integer arithmetic.
+ * <p>
+ * The rules in effect are held in a single reference that can be swapped
+ * atomically with {@link #install(PricingRules)}. Cached total prices are
+ * tied to the rules they were computed with, so installing new rules reprices
+ * every listing lazily on its next access.
+ * <p>
+ * Rules are read from a properties file:
+ * <pre>
+ * city.Budapest=1.30
+ * city.default=1.0
+ * panel.lowFloor.min=0
+ * panel.lowFloor.max=2
+ * panel.lowFloor.modifier=0.05
+ * panel.penaltyFloor=10
+ * panel.penaltyFloor.modifier=-0.05
+ * panel.insulated.modifier=0.05
+ * </pre>
+ */
+final class PricingRules {
+
+    private static final String CITY_PREFIX = "city.";
+    private static final String DEFAULT_CITY_KEY = "city.default";
+
+    private static final AtomicReference<PricingRules> current = new AtomicReference<>(defaults());
+
+    /** City modifiers in basis points, by city ID. */
+    private final int[] cityModifiers;
+    private final int defaultCityModifier;
+    private final int lowFloorMin;
+    private final int lowFloorMax;
+    /** Panel modifiers in basis points, added to a rate of 1.0. */
+    private final int lowFloorModifier;
+    private final int penaltyFloor;
+    private final int penaltyFloorModifier;
+    private final int insulatedModifier;
+    /** Largest magnitudes of a city modifier and of a combined panel modifier, for {@link #canPrice}. */
+    private final int largestCityModifier;
+    private final int largestPanelModifier;
+
+    private PricingRules(int[] cityModifiers, int defaultCityModifier,
+                         int lowFloorMin, int lowFloorMax, int lowFloorModifier,
+                         int penaltyFloor, int penaltyFloorModifier, int insulatedModifier) {
+        this.cityModifiers = cityModifiers;
+        this.defaultCityModifier = defaultCityModifier;
+        this.lowFloorMin = lowFloorMin;
+        this.lowFloorMax = lowFloorMax;
+        this.lowFloorModifier = lowFloorModifier;
+        this.penaltyFloor = penaltyFloor;
+        this.penaltyFloorModifier = penaltyFloorModifier;
+        this.insulatedModifier = insulatedModifier;
+        int city = Math.abs(defaultCityModifier);
+        for (int modifier : cityModifiers) city = Math.max(city, Math.abs(modifier));
+        this.largestCityModifier = city;
+        int panel = Money.RATE_SCALE;
+        for (int floor : new int[] {0, lowFloorModifier, penaltyFloorModifier}) {
+            panel = Math.max(panel, Math.abs(Money.RATE_SCALE + floor));
+            panel = Math.max(panel, Math.abs(Money.RATE_SCALE + floor + insulatedModifier));
+        }
+        this.largestPanelModifier = panel;
+    }
+
+    /**
+     * Returns the rules currently in effect.
+     *
+     * @return The current rules.
+     */
+    static PricingRules current() {
+        return current.get();
+    }
+
+    /**
+     * Atomically replaces the rules in effect.
+     *
+     * @param rules The new rules.
+     * @return The rules that were in effect before.
+     */
+    static PricingRules install(PricingRules rules) {
+        return current.getAndSet(rules);
+    }
+
+    /**
+     * Returns the built-in rules: Budapest 1.30, Debrecen 1.20, Nyíregyháza
+     * 1.15; panels +5% on floors 0–2, -5% on floor 10 and +5% if insulated.
+     *
+     * @return The default rules.
+     */
+    static PricingRules defaults() {
+        Properties props = new Properties();
+        props.setProperty("city.Budapest", "1.30");
+        props.setProperty("city.Debrecen", "1.20");
+        props.setProperty("city.Nyíregyháza", "1.15");
+        return fromProperties(props);
+    }
+
+    /**
+     * Reads rules from a UTF-8 properties file. Missing keys keep their
+     * default values.
+     *
+     * @param file The rules file.
+     * @return The rules read from the file.
+     * @throws IOException If the file cannot be read.
+     */
+    static PricingRules load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        return fromProperties(props);
+    }
+
+    /**
+     * Builds rules from properties in the format described on this class.
+     *
+     * @param props The rule properties.
+     * @return The rules.
+     * @throws IllegalArgumentException If a value is not a valid number.
+     */
+    static PricingRules fromProperties(Properties props) {
+        int defaultCity = rate(props, DEFAULT_CITY_KEY, 1.0);
+        int[] modifiers = new int[0];
+        for (Map.Entry<Object, Object> entry : props.entrySet()) {
+            String key = (String) entry.getKey();
+            if (!key.startsWith(CITY_PREFIX) || key.equals(DEFAULT_CITY_KEY)) continue;
+            int id = CityDictionary.idOf(key.substring(CITY_PREFIX.length()));
+            if (id >= modifiers.length) {
+                int oldLength = modifiers.length;
+                modifiers = Arrays.copyOf(modifiers, id + 1);
+                Arrays.fill(modifiers, oldLength, modifiers.length, defaultCity);
+            }
+            modifiers[id] = rate(props, key, 1.0);
+        }
+        return new PricingRules(modifiers, defaultCity,
+                (int) number(props, "panel.lowFloor.min", 0),
+                (int) number(props, "panel.lowFloor.max", 2),
+                rate(props, "panel.lowFloor.modifier", 0.05),
+                (int) number(props, "panel.penaltyFloor", 10),
+                rate(props, "panel.penaltyFloor.modifier", -0.05),
+                rate(props, "panel.insulated.modifier", 0.05));
+    }
+
+    private static int rate(Properties props, String key, double fallback) {
+        double value = number(props, key, fallback);
+        try {
+            return Money.basisPoints(value);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid pricing rule " + key + "=" + value, e);
+        }
+    }
+
+    private static double number(Properties props, String key, double fallback) {
+        String value = props.getProperty(key);
+        if (value == null) return fallback;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid pricing rule " + key + "=" + value, e);
+        }
+    }
+
+    /**
+     * Returns a copy of these rules with the modifier of one city replaced.
+     * These rules are not changed.
+     *
+     * @param cityId A {@link CityDictionary} ID.
+     * @param modifier The city's new modifier in basis points.
+     * @return The derived rules.
+     */
+    PricingRules withCityModifier(int cityId, int modifier) {
+        int[] modifiers = Arrays.copyOf(cityModifiers, Math.max(cityModifiers.length, cityId + 1));
+        Arrays.fill(modifiers, cityModifiers.length, modifiers.length, defaultCityModifier);
+        modifiers[cityId] = modifier;
+        return new PricingRules(modifiers, defaultCityModifier, lowFloorMin, lowFloorMax, lowFloorModifier,
+                penaltyFloor, penaltyFloorModifier, insulatedModifier);
+    }
+
+    /**
+     * Returns the price modifier of a city.
+     *
+     * @param cityId A {@link CityDictionary} ID.
+     * @return The modifier in basis points, or the default modifier for cities without a rule.
+     */
+    int cityModifier(int cityId) {
+        return cityId >= 0 && cityId < cityModifiers.length ? cityModifiers[cityId] : defaultCityModifier;
+    }
+
+    /**
+     * Calculates the total price of a listing before any panel modifiers.
+     *
+     * @param cityId A {@link CityDictionary} ID.
+     * @param price Price per square meter in minor units.
+     * @param sqm Area in square meters.
+     * @return The total price in minor units.
+     */
+    long baseTotalPrice(int cityId, long price, int sqm) {
+        return Money.applyRate(Money.times(price, sqm), cityModifier(cityId));
+    }
+
+    /**
+     * Applies the panel modifiers to a base total price.
+     *
+     * @param baseTotal The result of {@link #baseTotalPrice}.
+     * @param floor The panel's floor.
+     * @param insulated Whether the panel is insulated.
+     * @return The total price in minor units.
+     */
+    long panelTotalPrice(long baseTotal, int floor, boolean insulated) {
+        return Money.applyRate(baseTotal, panelModifier(floor, insulated));
+    }
+
+    /**
+     * Calculates the total price of a listing from its raw fields, exactly as
+     * {@link RealEstate#getTotalPrice()} and {@link Panel#getTotalPrice()} do.
+     *
+     * @param cityId A {@link CityDictionary} ID.
+     * @param price Price per square meter in minor units.
+     * @param sqm Area in square meters.
+     * @param panel Whether the listing is a panel.
+     * @param floor The panel's floor; ignored for other listings.
+     * @param insulated Whether the panel is insulated; ignored for other listings.
+     * @return The total price in minor units.
+     */
+    long totalPrice(int cityId, long price, int sqm, boolean panel, int floor, boolean insulated) {
+        long total = baseTotalPrice(cityId, price, sqm);
+        return panel ? panelTotalPrice(total, floor, insulated) : total;
+    }
+
+    /**
+     * Checks whether the total price of a listing fits in a {@code long}
+     * under the largest city and panel modifiers of these rules, so that
+     * pricing it cannot overflow whatever its city, floor or insulation.
+     *
+     * @param price Price per square meter in minor units.
+     * @param sqm Area in square meters.
+     * @return true if the total price can be calculated.
+     */
+    boolean canPrice(long price, int sqm) {
+        try {
+            Money.applyRate(Money.applyRate(Money.times(price, sqm), largestCityModifier), largestPanelModifier);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the combined floor and insulation modifier of a panel.
+     *
+     * @param floor The panel's floor.
+     * @param insulated Whether the panel is insulated.
+     * @return The modifier in basis points to apply on top of the city-adjusted total.
+     */
+    int panelModifier(int floor, boolean insulated) {
+        int modifier = Money.RATE_SCALE;
+
+        if (floor >= lowFloorMin && floor <= lowFloorMax) modifier += lowFloorModifier;
+        else if (floor == penaltyFloor) modifier += penaltyFloorModifier;
+
+        if (insulated) modifier += insulatedModifier;
+
+        return modifier;
+    }
+}
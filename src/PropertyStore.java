@@ -0,0 +1,1057 @@
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.*;
+
+/**
+ * Holds every loaded listing under a stable integer ID.
+ * <p>
+ * Listings are appended in O(1) and never merged, so two properties with the
+ * same total price are both kept. The order by total price is maintained as a
+ * separate index that is rebuilt lazily with one primitive sort, instead of
+ * calling {@link RealEstate#compareTo} on every insert. A listing belongs to
+ * at most one store, which it tells before and after each change.
+ * <p>
+ * The figures of the summary report are kept live: exact {@link Money} sums
+ * are adjusted in O(1)
+ * and the cheapest and most expensive totals are tracked in heaps, so
+ * {@link #summary()} is a constant-time snapshot. Installing new
+ * {@link PricingRules} triggers one full recount on the next access.
+ * <p>
+ * Listings are also indexed by city and by genre. Together with the price
+ * order these indexes back {@link #find}, which starts from the most
+ * selective index and filters its candidates by the remaining criteria.
+ * <p>
+ * A {@link MutationListener} can be attached to hear about every listing
+ * added, changed or removed, e.g. to log the changes durably.
+ * <p>
+ * A store is safe for concurrent use. Changes, including the setters of its
+ * listings, are serialized by the write lock of a {@link StampedLock}.
+ * Queries first run as optimistic reads, which neither block nor write shared
+ * memory, and are validated afterwards, so readers on any number of cores do
+ * not contend with each other; a query that overlapped a change runs again
+ * under the read lock. The price order and the recount after new pricing
+ * rules are rebuilt under the write lock by the first query that needs them.
+ * The fields of a listing read outside the store's queries may be mid-change
+ * while another thread updates it.
+ */
+class PropertyStore implements Iterable<RealEstate> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Receives every change to the listings of a store, after it is applied.
+     */
+    interface MutationListener {
+        void added(int id, RealEstate property);
+
+        void updated(int id, RealEstate property);
+
+        /**
+         * Receives a batch of changed listings at once.
+         *
+         * @param properties Listings of the store, changed together.
+         */
+        default void updatedAll(List<RealEstate> properties) {
+            for (RealEstate property : properties) {
+                updated(property.storeId, property);
+            }
+        }
+
+        void removed(int id);
+    }
+
+    private RealEstate[] listings;
+    /** Number of IDs handed out so far; removed IDs are not reused. */
+    private int idLimit;
+    /** Number of live listings. */
+    private int size;
+
+    /**
+     * IDs packed with the rank of their total price among the distinct totals,
+     * sorted ascending; null when stale.
+     */
+    private long[] priceOrder;
+    /** The distinct total prices ranked by the price order, ascending. */
+    private long[] priceOrderTotals;
+    /** The pricing rules the price order was built with. */
+    private PricingRules priceOrderRules;
+
+    /** Total price each live listing currently contributes to the aggregates. */
+    private long[] countedTotals;
+    private long sumPrice;
+    private long sumTotalPrice;
+    private double sumSqmPerRoom;
+    private final TotalPriceHeap cheapest = new TotalPriceHeap(false);
+    private final TotalPriceHeap mostExpensive = new TotalPriceHeap(true);
+    /** The pricing rules the aggregates were computed with. */
+    private PricingRules aggregateRules = PricingRules.current();
+
+    /** Listing IDs by city ID, and each listing's city ID and position in its list. */
+    private Postings[] byCity = new Postings[0];
+    private int[] indexedCity;
+    private int[] cityPosition;
+    /** Listing IDs by genre, and each listing's position in its list. */
+    private final EnumMap<Genre, Postings> byGenre = new EnumMap<>(Genre.class);
+    private int[] genrePosition;
+
+    private MutationListener mutationListener;
+
+    private final StampedLock lock = new StampedLock();
+    /** Stamp of the write lock held from {@link #beforeUpdate} to {@link #afterUpdate}. */
+    private long updateStamp;
+    /** Fields of the listing being updated as they were in {@link #beforeUpdate}, to undo a change that overflows. */
+    private int oldCityId;
+    private long oldPrice;
+    private int oldSqm;
+    private double oldNumberOfRooms;
+    private Genre oldGenre;
+    private int oldFloor;
+    private boolean oldInsulated;
+
+    /**
+     * Creates an empty store.
+     */
+    public PropertyStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the given number of listings.
+     *
+     * @param expectedSize Number of listings the store should hold without resizing
+     */
+    public PropertyStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, INITIAL_CAPACITY);
+        this.listings = new RealEstate[capacity];
+        this.countedTotals = new long[capacity];
+        this.indexedCity = new int[capacity];
+        this.cityPosition = new int[capacity];
+        this.genrePosition = new int[capacity];
+        for (Genre genre : Genre.values()) {
+            byGenre.put(genre, new Postings());
+        }
+    }
+
+    /**
+     * Appends a listing to the store.
+     *
+     * @param property The listing to add.
+     * @return The ID assigned to the listing.
+     */
+    public int add(RealEstate property) {
+        Objects.requireNonNull(property, "property");
+        long stamp = lock.writeLock();
+        try {
+            ensureCapacity(idLimit + 1);
+            syncAggregates();
+            int id = attach(property);
+            priceOrder = null;
+            return id;
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    /**
+     * Appends all listings in the given list, in list order. A listing whose
+     * total price, or whose addition to a sum, overflows is skipped without
+     * an ID, and the rest of the batch is still added.
+     *
+     * @param batch The listings to add.
+     * @return The number of listings skipped.
+     */
+    public int addAll(List<? extends RealEstate> batch) {
+        long stamp = lock.writeLock();
+        try {
+            ensureCapacity(idLimit + batch.size());
+            syncAggregates();
+            int skipped = 0;
+            for (RealEstate property : batch) {
+                try {
+                    attach(Objects.requireNonNull(property, "property"));
+                } catch (ArithmeticException e) {
+                    skipped++;
+                }
+            }
+            priceOrder = null;
+            return skipped;
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    /**
+     * Appends listings under consecutive IDs, leaving the ID of each null
+     * entry free as if its listing had been added and removed. Used to
+     * restore a saved store with the IDs it had.
+     *
+     * @param batch The listings to add, in ID order; null for a removed ID.
+     */
+    void restoreAll(List<? extends RealEstate> batch) {
+        long stamp = lock.writeLock();
+        try {
+            ensureCapacity(idLimit + batch.size());
+            syncAggregates();
+            for (RealEstate property : batch) {
+                if (property == null) idLimit++;
+                else attach(property);
+            }
+            priceOrder = null;
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes every listing and hands out IDs from 0 again, e.g. to reload
+     * listings after a failed replay of their changes. No mutation listener
+     * may be attached, since the removals are not reported.
+     *
+     * @throws IllegalStateException If a mutation listener is attached.
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            if (mutationListener != null) {
+                throw new IllegalStateException("Cannot clear a store with a mutation listener");
+            }
+            for (int id = 0; id < idLimit; id++) {
+                RealEstate property = listings[id];
+                if (property == null) continue;
+                listings[id] = null;
+                property.store = null;
+                property.storeId = -1;
+            }
+            idLimit = 0;
+            size = 0;
+            sumPrice = 0;
+            sumTotalPrice = 0;
+            sumSqmPerRoom = 0;
+            cheapest.clear();
+            mostExpensive.clear();
+            byCity = new Postings[0];
+            for (Genre genre : Genre.values()) {
+                byGenre.put(genre, new Postings());
+            }
+            priceOrder = null;
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a listing from the store. Its ID is not reused.
+     *
+     * @param id The listing ID.
+     * @return true if a listing was removed, false if the ID was already free.
+     */
+    public boolean remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            Objects.checkIndex(id, idLimit);
+            RealEstate property = listings[id];
+            if (property == null) {
+                return false;
+            }
+            syncAggregates();
+            retract(property);
+            unindex(property);
+            listings[id] = null;
+            property.store = null;
+            property.storeId = -1;
+            size--;
+            if (size == 0) {
+                sumSqmPerRoom = 0;
+            }
+            priceOrder = null;
+            if (mutationListener != null) {
+                mutationListener.removed(id);
+            }
+            return true;
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    /**
+     * Attaches the listener told about every later change, replacing any
+     * previous one.
+     *
+     * @param listener The listener, or null to detach it.
+     */
+    void setMutationListener(MutationListener listener) {
+        long stamp = lock.writeLock();
+        try {
+            this.mutationListener = listener;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the listing stored under the given ID.
+     *
+     * @param id The listing ID returned by {@link #add(RealEstate)}.
+     * @return The listing, or null if it has been removed.
+     */
+    public RealEstate get(int id) {
+        return read(false, () -> listings[Objects.checkIndex(id, idLimit)]);
+    }
+
+    /**
+     * Returns the number of stored listings.
+     *
+     * @return The number of listings.
+     */
+    public int size() {
+        return read(false, () -> size);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the upper bound of the IDs handed out so far; every ID is in
+     * the range 0 to idLimit() - 1, though some may have been removed.
+     *
+     * @return The ID limit.
+     */
+    public int idLimit() {
+        return read(false, () -> idLimit);
+    }
+
+    /**
+     * Returns the summary report figures of all listings, without scanning.
+     *
+     * @return A snapshot of the live aggregates.
+     */
+    public ReportSummary summary() {
+        return read(false, () -> size == 0 ? new ReportSummary()
+                : new ReportSummary(size, sumPrice, sumTotalPrice, cheapest.top(), mostExpensive.top(), sumSqmPerRoom));
+    }
+
+    /**
+     * Returns the listing IDs ordered by ascending total price. Listings with
+     * equal totals are ordered by ID.
+     *
+     * @return A new array of listing IDs.
+     */
+    public int[] idsByTotalPrice() {
+        return read(true, () -> {
+            long[] order = priceOrder;
+            int[] ids = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                ids[i] = (int) order[i];
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Returns the listings ordered by ascending total price.
+     *
+     * @return A new list of listings.
+     */
+    public List<RealEstate> byTotalPrice() {
+        return read(true, () -> {
+            long[] order = priceOrder;
+            List<RealEstate> result = new ArrayList<>(order.length);
+            for (long entry : order) {
+                result.add(listings[(int) entry]);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Finds the listings matching all given criteria.
+     * <p>
+     * The query starts from whichever of the city index, genre index and
+     * price order yields the fewest candidates, then checks the remaining
+     * criteria on those candidates only.
+     *
+     * @param city The city, or null for any city.
+     * @param genre The genre, or null for any genre.
+     * @param minTotalPrice Lowest total price in minor units, inclusive.
+     * @param maxTotalPrice Highest total price in minor units, inclusive.
+     * @param minRooms Lowest number of rooms, inclusive.
+     * @param maxRooms Highest number of rooms, inclusive.
+     * @return The matching listings, in the order of the index used.
+     */
+    public List<RealEstate> find(String city, Genre genre, long minTotalPrice, long maxTotalPrice,
+                                 double minRooms, double maxRooms) {
+        return read(needsPriceOrder(city, genre, minTotalPrice, maxTotalPrice),
+                () -> match(city, genre, minTotalPrice, maxTotalPrice, minRooms, maxRooms));
+    }
+
+    /** Whether a query can only be answered from the price order. */
+    private static boolean needsPriceOrder(String city, Genre genre, long minTotalPrice, long maxTotalPrice) {
+        return city == null && genre == null && (minTotalPrice != Long.MIN_VALUE || maxTotalPrice != Long.MAX_VALUE);
+    }
+
+    /**
+     * The body of {@link #find}; reads the store without changing it. Uses the
+     * price order if it is current, and requires it if no index applies.
+     */
+    private List<RealEstate> match(String city, Genre genre, long minTotalPrice, long maxTotalPrice,
+                                   double minRooms, double maxRooms) {
+        if (minTotalPrice > maxTotalPrice || minRooms > maxRooms) {
+            return new ArrayList<>();
+        }
+        int cityId = -1;
+        if (city != null) {
+            cityId = CityDictionary.find(city);
+            if (cityId < 0 || cityId >= byCity.length || byCity[cityId] == null) {
+                return new ArrayList<>();
+            }
+        }
+
+        // Pick the candidate source with the fewest entries.
+        int best = size;
+        Postings postings = null;
+        if (cityId >= 0) {
+            postings = byCity[cityId];
+            best = postings.count;
+        }
+        if (genre != null && byGenre.get(genre).count < best) {
+            postings = byGenre.get(genre);
+            best = postings.count;
+        }
+        long[] order = priceOrderRules == aggregateRules ? priceOrder : null;
+        long[] totals = priceOrderTotals;
+        int from = 0;
+        int to = 0;
+        boolean priceBounded = minTotalPrice != Long.MIN_VALUE || maxTotalPrice != Long.MAX_VALUE;
+        if (priceBounded && (postings == null || order != null)) {
+            from = lowerBound(order, (long) lowerBound(totals, minTotalPrice) << 32);
+            to = maxTotalPrice == Long.MAX_VALUE ? order.length
+                    : lowerBound(order, (long) lowerBound(totals, maxTotalPrice + 1) << 32);
+            if (to - from < best || postings == null) {
+                postings = null;
+                best = to - from;
+            } else {
+                order = null;
+            }
+        }
+
+        List<RealEstate> result = new ArrayList<>(Math.min(best, 1024));
+        if (postings != null) {
+            for (int i = 0; i < postings.count; i++) {
+                collect(postings.ids[i], cityId, genre, minTotalPrice, maxTotalPrice, minRooms, maxRooms, result);
+            }
+        } else if (order != null) {
+            for (int i = from; i < to; i++) {
+                collect((int) order[i], cityId, genre, minTotalPrice, maxTotalPrice, minRooms, maxRooms, result);
+            }
+        } else {
+            for (int id = 0; id < idLimit; id++) {
+                if (listings[id] != null) {
+                    collect(id, cityId, genre, minTotalPrice, maxTotalPrice, minRooms, maxRooms, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lowers the price of every listing matching the given criteria by the
+     * same percentage, as one batch under a single hold of the write lock.
+     * <p>
+     * The matches are found through the indexes as in {@link #find}, the new
+     * prices and totals are computed in parallel for large batches without
+     * the per-listing update hooks, and then the aggregates, the heaps, the
+     * price order and the mutation listener are updated once for the batch.
+     *
+     * @param city The city, or null for any city.
+     * @param genre The genre, or null for any genre.
+     * @param minTotalPrice Lowest total price in minor units, inclusive.
+     * @param maxTotalPrice Highest total price in minor units, inclusive.
+     * @param minRooms Lowest number of rooms, inclusive.
+     * @param maxRooms Highest number of rooms, inclusive.
+     * @param percentage The discount, from 0 to 100.
+     * @return The number of listings discounted.
+     * @throws IllegalArgumentException If the percentage is out of range.
+     */
+    public int discount(String city, Genre genre, long minTotalPrice, long maxTotalPrice,
+                        double minRooms, double maxRooms, int percentage) {
+        if (percentage < 0 || percentage > 100) {
+            throw new IllegalArgumentException("Invalid discount: " + percentage);
+        }
+        long stamp = lock.writeLock();
+        try {
+            refresh(needsPriceOrder(city, genre, minTotalPrice, maxTotalPrice));
+            return discount(match(city, genre, minTotalPrice, maxTotalPrice, minRooms, maxRooms), percentage);
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    private int discount(List<RealEstate> matched, int percentage) {
+        if (matched.isEmpty() || percentage == 0) {
+            return 0;
+        }
+        PricingRules rules = aggregateRules;
+
+        // Touch each listing once, in parallel for large batches, and keep what the store needs in arrays.
+        int count = matched.size();
+        int[] ids = new int[count];
+        long[] totals = new long[count];
+        long[] priceCuts = new long[count];
+        IntStream rows = IntStream.range(0, count);
+        if (count >= ReportSummary.PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(i -> {
+            RealEstate property = matched.get(i);
+            long before = property.getPriceMinor();
+            property.applyDiscount(percentage);
+            ids[i] = property.storeId;
+            totals[i] = property.cacheTotalPrice(rules);
+            priceCuts[i] = before - property.getPriceMinor();
+        });
+
+        long priceCut = 0;
+        long oldTotals = 0;
+        long newTotals = 0;
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            priceCut += priceCuts[i];
+            oldTotals += countedTotals[id];
+            newTotals += totals[i];
+            countedTotals[id] = totals[i];
+            cheapest.push(totals[i], id);
+            mostExpensive.push(totals[i], id);
+        }
+        sumPrice -= priceCut;
+        sumTotalPrice = Math.addExact(sumTotalPrice - oldTotals, newTotals);
+        priceOrder = null;
+        if (mutationListener != null) {
+            mutationListener.updatedAll(matched);
+        }
+        return count;
+    }
+
+    private void collect(int id, int cityId, Genre genre, long minTotalPrice, long maxTotalPrice,
+                         double minRooms, double maxRooms, List<RealEstate> result) {
+        RealEstate property = listings[id];
+        if (cityId >= 0 && indexedCity[id] != cityId) return;
+        if (genre != null && property.getGenre() != genre) return;
+        long total = countedTotals[id];
+        if (total < minTotalPrice || total > maxTotalPrice) return;
+        double rooms = property.getNumberOfRooms();
+        if (rooms < minRooms || rooms > maxRooms) return;
+        result.add(property);
+    }
+
+    /** Index of the first entry not less than key. */
+    private static int lowerBound(long[] sorted, long key) {
+        return lowerBound(sorted, sorted.length, key);
+    }
+
+    /** Index of the first of the first length entries not less than key. */
+    private static int lowerBound(long[] sorted, int length, long key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns a sequential stream over the listings stored at the time of the
+     * call, in ID order. Later additions and removals do not affect it.
+     *
+     * @return A stream of listings.
+     */
+    public Stream<RealEstate> stream() {
+        return Arrays.stream(listingsById()).filter(Objects::nonNull);
+    }
+
+    /**
+     * Runs a scan of the live listings, in ID order, as one query of the
+     * store: a change that overlaps it makes it run again under the read
+     * lock, so the scan sees every listing as of one point in time. The
+     * stream is parallel for large stores. The scan may run more than once
+     * and must not change anything, nor call back into the store.
+     *
+     * @param scan Computes a result from the listings.
+     * @return The result of the scan.
+     */
+    <T> T scan(Function<Stream<RealEstate>, T> scan) {
+        return read(false, () -> {
+            Stream<RealEstate> live = Arrays.stream(listings, 0, idLimit).filter(Objects::nonNull);
+            return scan.apply(size >= ReportSummary.PARALLEL_THRESHOLD ? live.parallel() : live);
+        });
+    }
+
+    /**
+     * Runs a scan of the listings indexed by ID, with null for removed IDs,
+     * as one query of the store like {@link #scan}. The list is a view of
+     * the store and is only valid during the scan, which may run more than
+     * once and must not change anything, nor call back into the store.
+     *
+     * @param scan Computes a result from the listings.
+     * @return The result of the scan.
+     */
+    <T> T scanById(Function<List<RealEstate>, T> scan) {
+        return read(false, () -> scan.apply(Collections.unmodifiableList(Arrays.asList(listings).subList(0, idLimit))));
+    }
+
+    /**
+     * Returns the listings stored at the time of the call, indexed by ID.
+     *
+     * @return A new array of idLimit() entries; null for removed IDs.
+     */
+    RealEstate[] listingsById() {
+        return read(false, () -> Arrays.copyOf(listings, idLimit));
+    }
+
+    @Override
+    public Iterator<RealEstate> iterator() {
+        return stream().iterator();
+    }
+
+    /**
+     * Takes the write lock and retracts a listing from the aggregates before
+     * one of its fields changes. The lock is held until {@link #afterUpdate};
+     * if the listing was removed meanwhile, it is released at once.
+     *
+     * @param property A listing of this store.
+     */
+    void beforeUpdate(RealEstate property) {
+        long stamp = lock.writeLock();
+        if (property.store != this) {
+            lock.unlockWrite(stamp);
+            return;
+        }
+        try {
+            syncAggregates();
+            retract(property);
+            unindex(property);
+            oldCityId = property.getCityId();
+            oldPrice = property.getPriceMinor();
+            oldSqm = property.getSqm();
+            oldNumberOfRooms = property.getNumberOfRooms();
+            oldGenre = property.getGenre();
+            if (property instanceof Panel panel) {
+                oldFloor = panel.getFloor();
+                oldInsulated = panel.isInsulated();
+            }
+        } catch (RuntimeException | Error e) {
+            lock.unlockWrite(stamp);
+            throw e;
+        }
+        updateStamp = stamp;
+    }
+
+    /**
+     * Adds a changed listing back into the aggregates and releases the write
+     * lock taken by {@link #beforeUpdate}. If its new total price or a sum
+     * overflows, the change is undone and the listing is counted as before.
+     *
+     * @param property A listing of this store.
+     * @throws ArithmeticException If the change was undone.
+     */
+    void afterUpdate(RealEstate property) {
+        try {
+            try {
+                include(property, property.storeId);
+            } catch (ArithmeticException e) {
+                property.assign(oldCityId, oldPrice, oldSqm, oldNumberOfRooms, oldGenre, oldFloor, oldInsulated);
+                include(property, property.storeId);
+                index(property);
+                throw e;
+            }
+            index(property);
+            priceOrder = null;
+            if (mutationListener != null) {
+                mutationListener.updated(property.storeId, property);
+            }
+        } finally {
+            releaseWrite(updateStamp);
+        }
+    }
+
+    /**
+     * Returns the total price of a listing of this store whose cached total
+     * is stale, recounting the store first if the pricing rules changed.
+     *
+     * @param property A listing, normally of this store.
+     * @return The total price in minor units.
+     */
+    long totalPrice(RealEstate property) {
+        long stamp = lock.writeLock();
+        try {
+            if (property.store != this) {
+                return property.cacheTotalPrice(PricingRules.current());
+            }
+            syncAggregates();
+            return countedTotals[property.storeId];
+        } finally {
+            releaseWrite(stamp);
+        }
+    }
+
+    /**
+     * Runs a query that only reads the store. It first runs as an optimistic
+     * read; if a change overlapped it, or it failed on state torn by one, it
+     * runs again under the read lock. Stale derived state is rebuilt under
+     * the write lock first.
+     *
+     * @param ordered Whether the query needs the price order.
+     * @param query The query.
+     * @return The result of the query.
+     */
+    private <T> T read(boolean ordered, Supplier<T> query) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0 && isCurrent(ordered)) {
+            try {
+                T result = query.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A concurrent change left the state inconsistent; retry under the lock.
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            if (!isCurrent(ordered)) {
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp == 0) {
+                    lock.unlockRead(stamp);
+                    writeStamp = lock.writeLock();
+                }
+                stamp = writeStamp;
+                refresh(ordered);
+            }
+            return query.get();
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    /** Whether the aggregates, and the price order if needed, match the pricing rules. */
+    private boolean isCurrent(boolean ordered) {
+        PricingRules rules = PricingRules.current();
+        return aggregateRules == rules && (!ordered || (priceOrder != null && priceOrderRules == rules));
+    }
+
+    /** Rebuilds stale derived state; requires the write lock. */
+    private void refresh(boolean ordered) {
+        syncAggregates();
+        if (ordered) {
+            priceOrder();
+        }
+    }
+
+    /**
+     * Rebuilds the heaps if stale entries make up most of them, drops stale
+     * heap tops, so that queries can read the extremes without changing the
+     * heaps, and releases the write lock.
+     */
+    private void releaseWrite(long stamp) {
+        try {
+            if (cheapest.size() > 2 * size + INITIAL_CAPACITY) {
+                rebuildHeaps();
+            }
+            cheapest.prune();
+            mostExpensive.prune();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Stores a listing under the next ID. It is counted first, so a total
+     * price or sum that overflows throws before the store changes.
+     */
+    private int attach(RealEstate property) {
+        int id = idLimit;
+        include(property, id);
+        idLimit++;
+        listings[id] = property;
+        property.store = this;
+        property.storeId = id;
+        size++;
+        index(property);
+        if (mutationListener != null) {
+            mutationListener.added(id, property);
+        }
+        return id;
+    }
+
+    private void index(RealEstate property) {
+        int id = property.storeId;
+        int cityId = property.getCityId();
+        if (cityId >= byCity.length) {
+            byCity = Arrays.copyOf(byCity, Math.max(cityId + 1, byCity.length * 2));
+        }
+        if (byCity[cityId] == null) {
+            byCity[cityId] = new Postings();
+        }
+        indexedCity[id] = cityId;
+        cityPosition[id] = byCity[cityId].add(id);
+        genrePosition[id] = byGenre.get(property.getGenre()).add(id);
+    }
+
+    private void unindex(RealEstate property) {
+        int id = property.storeId;
+        int moved = byCity[indexedCity[id]].removeAt(cityPosition[id]);
+        if (moved >= 0) cityPosition[moved] = cityPosition[id];
+        moved = byGenre.get(property.getGenre()).removeAt(genrePosition[id]);
+        if (moved >= 0) genrePosition[moved] = genrePosition[id];
+    }
+
+    /**
+     * Adds a listing to the aggregates and heaps under the given ID. Throws
+     * {@link ArithmeticException} with the aggregates unchanged if its total
+     * price or a sum overflows.
+     */
+    private void include(RealEstate property, int id) {
+        long total = property.cacheTotalPrice(aggregateRules);
+        long newSumPrice = Math.addExact(sumPrice, property.getPriceMinor());
+        long newSumTotalPrice = Math.addExact(sumTotalPrice, total);
+        countedTotals[id] = total;
+        sumPrice = newSumPrice;
+        sumTotalPrice = newSumTotalPrice;
+        sumSqmPerRoom += sqmPerRoom(property);
+        cheapest.push(total, id);
+        mostExpensive.push(total, id);
+    }
+
+    private void retract(RealEstate property) {
+        sumPrice -= property.getPriceMinor();
+        sumTotalPrice -= countedTotals[property.storeId];
+        sumSqmPerRoom -= sqmPerRoom(property);
+    }
+
+    private static double sqmPerRoom(RealEstate property) {
+        return ReportSummary.sqmPerRoom(property.getSqm(), property.getNumberOfRooms());
+    }
+
+    /**
+     * Recounts all aggregates if the pricing rules changed since they were
+     * computed, since every total price may have changed.
+     */
+    private void syncAggregates() {
+        PricingRules rules = PricingRules.current();
+        if (aggregateRules == rules) {
+            return;
+        }
+        aggregateRules = rules;
+        sumPrice = 0;
+        sumTotalPrice = 0;
+        sumSqmPerRoom = 0;
+        for (int id = 0; id < idLimit; id++) {
+            RealEstate property = listings[id];
+            if (property == null) continue;
+            long total = property.cacheTotalPrice(rules);
+            countedTotals[id] = total;
+            sumPrice = Math.addExact(sumPrice, property.getPriceMinor());
+            sumTotalPrice = Math.addExact(sumTotalPrice, total);
+            sumSqmPerRoom += sqmPerRoom(property);
+        }
+        rebuildHeaps();
+    }
+
+    private void rebuildHeaps() {
+        cheapest.clear();
+        mostExpensive.clear();
+        for (int id = 0; id < idLimit; id++) {
+            if (listings[id] == null) continue;
+            cheapest.append(countedTotals[id], id);
+            mostExpensive.append(countedTotals[id], id);
+        }
+        cheapest.heapify();
+        mostExpensive.heapify();
+    }
+
+    private boolean isCounted(long total, int id) {
+        return listings[id] != null && countedTotals[id] == total;
+    }
+
+    /**
+     * Sorts (ID, total price rank) pairs packed into longs. Totals need all 64
+     * bits, so they are first replaced by their rank among the distinct
+     * totals; both steps are primitive sorts.
+     */
+    private long[] priceOrder() {
+        long[] order = priceOrder;
+        PricingRules rules = PricingRules.current();
+        if (order == null || priceOrderRules != rules) {
+            syncAggregates();
+            long[] totals = new long[size];
+            int n = 0;
+            for (int id = 0; id < idLimit; id++) {
+                if (listings[id] != null) {
+                    totals[n++] = countedTotals[id];
+                }
+            }
+            Arrays.sort(totals);
+            int distinct = 0;
+            for (int i = 0; i < n; i++) {
+                if (distinct == 0 || totals[i] != totals[distinct - 1]) {
+                    totals[distinct++] = totals[i];
+                }
+            }
+            order = new long[size];
+            n = 0;
+            for (int id = 0; id < idLimit; id++) {
+                if (listings[id] != null) {
+                    order[n++] = ((long) lowerBound(totals, distinct, countedTotals[id]) << 32) | id;
+                }
+            }
+            Arrays.sort(order);
+            priceOrder = order;
+            priceOrderTotals = Arrays.copyOf(totals, distinct);
+            priceOrderRules = rules;
+        }
+        return order;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > listings.length) {
+            int newCapacity = Math.max(listings.length + (listings.length >> 1), required);
+            listings = Arrays.copyOf(listings, newCapacity);
+            countedTotals = Arrays.copyOf(countedTotals, newCapacity);
+            indexedCity = Arrays.copyOf(indexedCity, newCapacity);
+            cityPosition = Arrays.copyOf(cityPosition, newCapacity);
+            genrePosition = Arrays.copyOf(genrePosition, newCapacity);
+        }
+    }
+
+    /**
+     * Unordered list of listing IDs with O(1) append and O(1) removal by
+     * position; removal moves the last ID into the freed slot.
+     */
+    private static final class Postings {
+
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int count;
+
+        /** Appends an ID and returns its position. */
+        int add(int id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count] = id;
+            return count++;
+        }
+
+        /** Removes the ID at a position; returns the ID moved into it, or -1. */
+        int removeAt(int position) {
+            int last = ids[--count];
+            if (position == count) {
+                return -1;
+            }
+            ids[position] = last;
+            return last;
+        }
+    }
+
+    /**
+     * Binary heap of (total price, ID) pairs kept in parallel arrays. Entries
+     * of removed or changed listings are not deleted eagerly; they are dropped
+     * when they reach the top, before each change releases the write lock.
+     */
+    private final class TotalPriceHeap {
+
+        private final boolean max;
+        private long[] totals = new long[INITIAL_CAPACITY];
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int count;
+
+        TotalPriceHeap(boolean max) {
+            this.max = max;
+        }
+
+        int size() {
+            return count;
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        /** Adds an entry without restoring the heap order; call {@link #heapify()} afterwards. */
+        void append(long total, int id) {
+            if (count == totals.length) {
+                totals = Arrays.copyOf(totals, count * 2);
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            totals[count] = total;
+            ids[count++] = id;
+        }
+
+        /** Restores the heap order over all entries in linear time. */
+        void heapify() {
+            for (int i = (count >>> 1) - 1; i >= 0; i--) {
+                siftDown(i, totals[i], ids[i]);
+            }
+        }
+
+        void push(long total, int id) {
+            if (count == totals.length) {
+                totals = Arrays.copyOf(totals, count * 2);
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            int i = count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!above(total, totals[parent])) break;
+                totals[i] = totals[parent];
+                ids[i] = ids[parent];
+                i = parent;
+            }
+            totals[i] = total;
+            ids[i] = id;
+        }
+
+        /** Discards stale entries from the top. */
+        void prune() {
+            while (count > 0 && !isCounted(totals[0], ids[0])) {
+                pop();
+            }
+        }
+
+        /**
+         * Returns the top total without changing the heap; valid after
+         * {@link #prune()} while the store is not empty.
+         */
+        long top() {
+            return totals[0];
+        }
+
+        private void pop() {
+            count--;
+            siftDown(0, totals[count], ids[count]);
+        }
+
+        /** Places an entry at position i or below, moving better children up. */
+        private void siftDown(int i, long total, int id) {
+            int half = count >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < count && above(totals[child + 1], totals[child])) child++;
+                if (!above(totals[child], total)) break;
+                totals[i] = totals[child];
+                ids[i] = ids[child];
+                i = child;
+            }
+            totals[i] = total;
+            ids[i] = id;
+        }
+
+        /** Whether total a belongs nearer the top than total b. */
+        private boolean above(long a, long b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
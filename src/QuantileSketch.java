@@ -0,0 +1,221 @@
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch of {@code long} values in the style of KLL
+ * (Karnin, Lang and Liberty).
+ * <p>
+ * Values are kept in a stack of levels; an item on level h stands for 2^h
+ * input values. When the sketch exceeds its capacity, the lowest full level
+ * is sorted and every other item is promoted to the level above, so memory
+ * stays at O(k log(n / k)) values however many are added. Smaller k saves
+ * memory at the cost of accuracy; the default gives a rank error of roughly
+ * one percent. The count, minimum and maximum are exact.
+ * <p>
+ * Sketches with the same k can be merged, so chunks, threads and separately
+ * processed files can each be sketched on their own. Compaction uses a fixed
+ * pseudo-random sequence, so the same inputs merged in the same order always
+ * give the same answers.
+ */
+class QuantileSketch {
+
+    static final int DEFAULT_K = 200;
+    private static final int MIN_K = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private long[][] levels;
+    private int[] sizes;
+    /** Capacity of each level and their sum; they only change when a level is added. */
+    private int[] capacities;
+    private int capacity;
+    private int retained;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private long random = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Creates an empty sketch with the default accuracy.
+     */
+    QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param k Capacity of the top level; larger is more accurate.
+     */
+    QuantileSketch(int k) {
+        if (k < MIN_K) throw new IllegalArgumentException("Invalid k: " + k);
+        this.k = k;
+        this.levels = new long[][]{new long[k]};
+        this.sizes = new int[1];
+        updateCapacities();
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value to add.
+     */
+    void add(long value) {
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+        append(0, value);
+        if (retained > capacity) {
+            compress();
+        }
+    }
+
+    /**
+     * Merges another sketch into this one.
+     *
+     * @param other A sketch with the same k.
+     * @throws IllegalArgumentException If the sketches have different k.
+     */
+    void combine(QuantileSketch other) {
+        if (other.k != k) throw new IllegalArgumentException("Cannot merge sketches with k " + k + " and " + other.k);
+        if (other.count == 0) return;
+        count += other.count;
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+        for (int level = 0; level < other.sizes.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        while (retained > capacity) {
+            compress();
+        }
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest value added.
+     *
+     * @return The minimum, or 0 if the sketch is empty.
+     */
+    long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Returns the largest value added.
+     *
+     * @return The maximum, or 0 if the sketch is empty.
+     */
+    long max() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * Estimates the value at a quantile, e.g. 0.5 for the median.
+     *
+     * @param q The quantile, between 0 and 1.
+     * @return The estimated value, or 0 if the sketch is empty.
+     */
+    long quantile(double q) {
+        if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Invalid quantile: " + q);
+        if (count == 0) return 0;
+        if (q == 0) return min;
+        if (q == 1) return max;
+
+        // Merge the sorted levels, accumulating each item's weight until the target rank.
+        int height = sizes.length;
+        long[][] sorted = new long[height][];
+        int[] next = new int[height];
+        for (int level = 0; level < height; level++) {
+            sorted[level] = Arrays.copyOf(levels[level], sizes[level]);
+            Arrays.sort(sorted[level]);
+        }
+        double target = q * count;
+        long weight = 0;
+        while (true) {
+            int lowest = -1;
+            for (int level = 0; level < height; level++) {
+                if (next[level] < sorted[level].length
+                        && (lowest < 0 || sorted[level][next[level]] < sorted[lowest][next[lowest]])) {
+                    lowest = level;
+                }
+            }
+            if (lowest < 0) return max;
+            long value = sorted[lowest][next[lowest]++];
+            weight += 1L << lowest;
+            if (weight >= target) return Math.max(min, Math.min(max, value));
+        }
+    }
+
+    private void append(int level, long value) {
+        if (level >= sizes.length) {
+            // A merged sketch may be several levels taller than this one.
+            int height = sizes.length;
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+            updateCapacities();
+            for (int added = height; added <= level; added++) {
+                levels[added] = new long[capacities[added]];
+            }
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(2, levels[level].length * 2));
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    /** Compacts the lowest level that has reached its capacity. */
+    private void compress() {
+        for (int level = 0; level < sizes.length; level++) {
+            if (sizes[level] >= capacities[level]) {
+                compact(level);
+                return;
+            }
+        }
+    }
+
+    /** Sorts a level and promotes every other item, starting at a random offset, to the next level. */
+    private void compact(int level) {
+        long[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        int pairs = size & ~1;
+        int offset = nextBit();
+        sizes[level] = 0;
+        retained -= pairs;
+        for (int i = offset; i < pairs; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if (pairs < size) {
+            // An odd item out stays behind for the next compaction.
+            items[0] = items[size - 1];
+            sizes[level] = 1;
+        }
+    }
+
+    /**
+     * Recomputes the level capacities for the current number of levels; lower
+     * levels get geometrically smaller buffers.
+     */
+    private void updateCapacities() {
+        int height = sizes.length;
+        capacities = new int[height];
+        capacity = 0;
+        for (int level = 0; level < height; level++) {
+            int depth = height - 1 - level;
+            capacities[level] = Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+            capacity += capacities[level];
+        }
+    }
+
+    private int nextBit() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random >>> 63);
+    }
+}
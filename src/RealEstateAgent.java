@@ -1,4 +1,7 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.logging.*;
 
@@ -17,7 +20,8 @@ enum Genre {
 interface PropertyInterface {
 
     /**
-     * Applies a discount to the property’s price.
+     * Applies a discount to the property’s price. An out-of-range percentage
+     * is logged and leaves the price unchanged.
      *
      * @param percentage The discount percentage (0–100).
      */
@@ -26,9 +30,9 @@ interface PropertyInterface {
     /**
      * Calculates the total price of the property based on city and area.
      *
-     * @return The total price as an integer.
+     * @return The total price in {@link Money} minor units.
      */
-    int getTotalPrice();
+    long getTotalPrice();
 
     /**
      * Calculates the average square meters per room.
@@ -51,11 +55,26 @@ interface PropertyInterface {
 class RealEstate implements PropertyInterface, Comparable<RealEstate> {
 
     protected String city;
-    protected double price;
+    /** {@link CityDictionary} ID of {@link #city}; pricing and grouping use this instead of the name. */
+    protected int cityId;
+    /** Price per square meter in {@link Money} minor units. */
+    protected long price;
     protected int sqm;
     protected double numberOfRooms;
     protected Genre genre;
 
+    /**
+     * Last computed total price, valid while totalPriceRules is the rule set
+     * in effect. totalPriceRules is written after totalPrice and read before
+     * it, so a reader that sees the rules also sees the total computed with them.
+     */
+    private long totalPrice;
+    private volatile PricingRules totalPriceRules;
+
+    /** The store holding this listing and the ID it assigned; notified on every change. */
+    PropertyStore store;
+    int storeId = -1;
+
     private static final Logger logger = Logger.getLogger(RealEstate.class.getName());
 
     /**
@@ -68,8 +87,25 @@ class RealEstate implements PropertyInterface, Comparable<RealEstate> {
      * @param genre Type of property (family house, condominium, etc.)
      */
     public RealEstate(String city, double price, int sqm, double numberOfRooms, Genre genre) {
-        logger.info("Creating RealEstate: " + city);
-        this.city = city;
+        this(CityDictionary.idOf(city), Money.of(price), sqm, numberOfRooms, genre);
+    }
+
+    /**
+     * Creates a RealEstate instance for a city that is already in the
+     * {@link CityDictionary}.
+     *
+     * @param cityId ID of the city where the property is located
+     * @param price Price per square meter in minor units
+     * @param sqm Area of the property in square meters
+     * @param numberOfRooms Number of rooms in the property
+     * @param genre Type of property (family house, condominium, etc.)
+     */
+    RealEstate(int cityId, long price, int sqm, double numberOfRooms, Genre genre) {
+        this.cityId = cityId;
+        this.city = CityDictionary.nameOf(cityId);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Creating RealEstate: " + city);
+        }
         this.price = price;
         this.sqm = sqm;
         this.numberOfRooms = numberOfRooms;
@@ -81,17 +117,47 @@ class RealEstate implements PropertyInterface, Comparable<RealEstate> {
     }
 
     public void setCity(String city) {
-        logger.info("Setting city to " + city);
-        this.city = city;
+        logger.fine(() -> "Setting city to " + city);
+        int id = CityDictionary.idOf(city);
+        beforeUpdate();
+        this.cityId = id;
+        this.city = CityDictionary.nameOf(id);
+        afterUpdate();
+    }
+
+    public int getCityId() {
+        return cityId;
+    }
+
+    /**
+     * Checks whether another property is in the same city.
+     *
+     * @param other The property to compare with.
+     * @return true if both are in the same city, false otherwise.
+     */
+    public boolean sameCity(RealEstate other) {
+        return cityId == other.cityId;
     }
 
     public double getPrice() {
-        return price;
+        return Money.toUnits(price);
     }
 
     public void setPrice(double price) {
-        logger.info("Setting price to " + price);
-        this.price = price;
+        logger.fine(() -> "Setting price to " + price);
+        long minor = Money.of(price);
+        beforeUpdate();
+        this.price = minor;
+        afterUpdate();
+    }
+
+    /**
+     * Returns the price per square meter in {@link Money} minor units.
+     *
+     * @return The exact price.
+     */
+    public long getPriceMinor() {
+        return price;
     }
 
     public int getSqm() {
@@ -99,8 +165,10 @@ class RealEstate implements PropertyInterface, Comparable<RealEstate> {
     }
 
     public void setSqm(int sqm) {
-        logger.info("Setting sqm to " + sqm);
+        logger.fine(() -> "Setting sqm to " + sqm);
+        beforeUpdate();
         this.sqm = sqm;
+        afterUpdate();
     }
 
     public double getNumberOfRooms() {
@@ -108,8 +176,10 @@ class RealEstate implements PropertyInterface, Comparable<RealEstate> {
     }
 
     public void setNumberOfRooms(double numberOfRooms) {
-        logger.info("Setting number of rooms to " + numberOfRooms);
+        logger.fine(() -> "Setting number of rooms to " + numberOfRooms);
+        beforeUpdate();
         this.numberOfRooms = numberOfRooms;
+        afterUpdate();
     }
 
     public Genre getGenre() {
@@ -117,40 +187,132 @@ class RealEstate implements PropertyInterface, Comparable<RealEstate> {
     }
 
     public void setGenre(Genre genre) {
-        logger.info("Setting genre to " + genre);
+        logger.fine(() -> "Setting genre to " + genre);
+        beforeUpdate();
         this.genre = genre;
+        afterUpdate();
     }
 
     @Override
     public void makeDiscount(int percentage) {
-        logger.info("Applying discount: " + percentage + "%");
+        logger.fine(() -> "Applying discount: " + percentage + "%");
         try {
             if (percentage < 0 || percentage > 100)
                 throw new IllegalArgumentException("Invalid discount: " + percentage);
-            this.price = this.price * (100 - percentage) / 100.0;
+            beforeUpdate();
+            this.price = Money.discount(this.price, percentage);
+            afterUpdate();
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error applying discount", e);
         }
     }
 
+    /**
+     * Lowers the price by a percentage that the caller has already validated,
+     * without telling the owning store. Used by bulk discounts, which account
+     * for the whole batch in the store at once.
+     *
+     * @param percentage The discount, from 0 to 100.
+     */
+    void applyDiscount(int percentage) {
+        price = Money.discount(price, percentage);
+        totalPriceRules = null;
+    }
+
+    /**
+     * Sets every field at once, as a single change for the owning store. Used
+     * to replay logged changes; the floor and insulation apply to panels only.
+     */
+    void restore(int cityId, long price, int sqm, double numberOfRooms, Genre genre, int floor, boolean insulated) {
+        beforeUpdate();
+        assign(cityId, price, sqm, numberOfRooms, genre, floor, insulated);
+        afterUpdate();
+    }
+
+    protected void assign(int cityId, long price, int sqm, double numberOfRooms, Genre genre, int floor,
+                          boolean insulated) {
+        this.cityId = cityId;
+        this.city = CityDictionary.nameOf(cityId);
+        this.price = price;
+        this.sqm = sqm;
+        this.numberOfRooms = numberOfRooms;
+        this.genre = genre;
+    }
+
+    /**
+     * Returns the total price, computing it only if a price-relevant field or
+     * the pricing rules have changed since the last call. A listing in a store
+     * leaves the computation to the store, which changes it under its lock.
+     *
+     * @return The total price in minor units.
+     */
     @Override
-    public int getTotalPrice() {
-        logger.info("Calculating total price for " + city);
-        double basePrice = price * sqm;
-        double modifier = 1.0;
+    public long getTotalPrice() {
+        PricingRules rules = PricingRules.current();
+        if (totalPriceRules == rules) {
+            return totalPrice;
+        }
+        PropertyStore owner = store;
+        return owner != null ? owner.totalPrice(this) : cacheTotalPrice(rules);
+    }
+
+    /**
+     * Computes the total price and caches it. The owning store calls this
+     * while holding its write lock.
+     *
+     * @param rules The pricing rules to apply.
+     * @return The total price in minor units.
+     */
+    long cacheTotalPrice(PricingRules rules) {
+        long total = computeTotalPrice(rules);
+        totalPrice = total;
+        totalPriceRules = rules;
+        return total;
+    }
+
+    /**
+     * Calculates the total price from the current field values.
+     *
+     * @param rules The pricing rules to apply.
+     * @return The total price in minor units.
+     */
+    protected long computeTotalPrice(PricingRules rules) {
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Calculating total price for " + city);
+        }
+        return rules.baseTotalPrice(cityId, price, sqm);
+    }
 
-        switch (city) {
-            case "Budapest": modifier = 1.30; break;
-            case "Debrecen": modifier = 1.20; break;
-            case "Nyíregyháza": modifier = 1.15; break;
+    /**
+     * Tells the owning store that a field is about to change, so it can
+     * retract this listing from its aggregates and indexes. The store holds
+     * its write lock until {@link #afterUpdate()}.
+     */
+    protected void beforeUpdate() {
+        if (store != null) {
+            store.beforeUpdate(this);
         }
+    }
 
-        return (int) (basePrice * modifier);
+    /**
+     * Discards the cached total price after a field has changed and tells the
+     * owning store to account for the new values.
+     *
+     * @throws ArithmeticException If the new total price or a sum of the
+     *         owning store overflows; the store has then undone the change.
+     */
+    protected void afterUpdate() {
+        totalPriceRules = null;
+        if (store != null) {
+            store.afterUpdate(this);
+        }
     }
 
     @Override
     public double averageSqmPerRoom() {
-        logger.info("Calculating average sqm/room for " + city);
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Calculating average sqm/room for " + city);
+        }
         try {
             if (numberOfRooms <= 0) throw new ArithmeticException("Number of rooms must be > 0");
             return sqm / numberOfRooms;
@@ -162,16 +324,20 @@ class RealEstate implements PropertyInterface, Comparable<RealEstate> {
 
     @Override
     public String toString() {
-        logger.info("toString() called for " + city);
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("toString() called for " + city);
+        }
         return String.format(
-                "City: %s, Price/sqm: %.2f, Area: %d sqm, Rooms: %.1f, Genre: %s, Total Price: %d, Avg sqm/room: %.2f",
-                city, price, sqm, numberOfRooms, genre, getTotalPrice(), averageSqmPerRoom());
+                "City: %s, Price/sqm: %s, Area: %d sqm, Rooms: %.1f, Genre: %s, Total Price: %s, Avg sqm/room: %.2f",
+                city, Money.format(price), sqm, numberOfRooms, genre, Money.format(getTotalPrice()), averageSqmPerRoom());
     }
 
     @Override
     public int compareTo(RealEstate other) {
-        logger.info("Comparing " + this.city + " and " + other.city);
-        return Integer.compare(this.getTotalPrice(), other.getTotalPrice());
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Comparing " + this.city + " and " + other.city);
+        }
+        return Long.compare(this.getTotalPrice(), other.getTotalPrice());
     }
 }
 
@@ -191,9 +357,9 @@ interface PanelInterface {
     /**
      * Calculates the price per room for the property.
      *
-     * @return Price per room as an integer.
+     * @return Price per room in {@link Money} minor units.
      */
-    int roomprice();
+    long roomprice();
 }
 
 /**
@@ -217,19 +383,47 @@ class Panel extends RealEstate implements PanelInterface {
      * @param isInsulated Whether the panel is insulated
      */
     public Panel(String city, double price, int sqm, double numberOfRooms, Genre genre, int floor, boolean isInsulated) {
-        super(city, price, sqm, numberOfRooms, genre);
-        logger.info("Creating Panel in " + city);
+        this(CityDictionary.idOf(city), Money.of(price), sqm, numberOfRooms, genre, floor, isInsulated);
+    }
+
+    /**
+     * Creates a Panel instance for a city that is already in the
+     * {@link CityDictionary}.
+     *
+     * @param cityId ID of the city where the panel is located
+     * @param price Price per square meter in minor units
+     * @param sqm Area in square meters
+     * @param numberOfRooms Number of rooms
+     * @param genre Property genre
+     * @param floor Floor number
+     * @param isInsulated Whether the panel is insulated
+     */
+    Panel(int cityId, long price, int sqm, double numberOfRooms, Genre genre, int floor, boolean isInsulated) {
+        super(cityId, price, sqm, numberOfRooms, genre);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Creating Panel in " + city);
+        }
         this.floor = floor;
         this.isInsulated = isInsulated;
     }
 
+    @Override
+    protected void assign(int cityId, long price, int sqm, double numberOfRooms, Genre genre, int floor,
+                          boolean insulated) {
+        super.assign(cityId, price, sqm, numberOfRooms, genre, floor, insulated);
+        this.floor = floor;
+        this.isInsulated = insulated;
+    }
+
     public int getFloor() {
         return floor;
     }
 
     public void setFloor(int floor) {
-        logger.info("Setting floor to " + floor);
+        logger.fine(() -> "Setting floor to " + floor);
+        beforeUpdate();
         this.floor = floor;
+        afterUpdate();
     }
 
     public boolean isInsulated() {
@@ -237,43 +431,46 @@ class Panel extends RealEstate implements PanelInterface {
     }
 
     public void setInsulated(boolean insulated) {
-        logger.info("Setting insulated to " + insulated);
+        logger.fine(() -> "Setting insulated to " + insulated);
+        beforeUpdate();
         isInsulated = insulated;
+        afterUpdate();
     }
 
     @Override
-    public int getTotalPrice() {
-        logger.info("Calculating total price for panel in " + city);
-        int baseTotal = super.getTotalPrice();
-        double modifier = 1.0;
-
-        if (floor >= 0 && floor <= 2) modifier += 0.05;
-        else if (floor == 10) modifier -= 0.05;
-
-        if (isInsulated) modifier += 0.05;
-
-        return (int) (baseTotal * modifier);
+    protected long computeTotalPrice(PricingRules rules) {
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Calculating total price for panel in " + city);
+        }
+        long baseTotal = super.computeTotalPrice(rules);
+        return rules.panelTotalPrice(baseTotal, floor, isInsulated);
     }
 
     @Override
     public String toString() {
-        logger.info("toString() called for panel in " + city);
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("toString() called for panel in " + city);
+        }
         return String.format(
-                "Panel - City: %s, Price/sqm: %.2f, Area: %d sqm, Rooms: %.1f, Genre: %s, Floor: %d, Insulated: %s, Total Price: %d, Avg sqm/room: %.2f",
-                city, price, sqm, numberOfRooms, genre, floor, (isInsulated ? "yes" : "no"),
-                getTotalPrice(), averageSqmPerRoom());
+                "Panel - City: %s, Price/sqm: %s, Area: %d sqm, Rooms: %.1f, Genre: %s, Floor: %d, Insulated: %s, Total Price: %s, Avg sqm/room: %.2f",
+                city, Money.format(price), sqm, numberOfRooms, genre, floor, (isInsulated ? "yes" : "no"),
+                Money.format(getTotalPrice()), averageSqmPerRoom());
     }
 
     @Override
     public boolean hasSameAmount(RealEstate other) {
-        logger.info("Comparing total price equality between two properties");
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Comparing total price equality between two properties");
+        }
         return this.getTotalPrice() == other.getTotalPrice();
     }
 
     @Override
-    public int roomprice() {
-        logger.info("Calculating price per room for panel in " + city);
-        return (int) ((price * sqm) / numberOfRooms);
+    public long roomprice() {
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Calculating price per room for panel in " + city);
+        }
+        return (long) (Money.times(price, sqm) / numberOfRooms);
     }
 }
 
@@ -283,7 +480,14 @@ class Panel extends RealEstate implements PanelInterface {
 public class RealEstateAgent {
 
     private static final Logger logger = Logger.getLogger(RealEstateAgent.class.getName());
-    private static final TreeSet<RealEstate> properties = new TreeSet<>();
+    /** The loaded listings; may be queried while a load, feed or discount changes them. */
+    private static final PropertyStore properties = new PropertyStore();
+    /** Logs the changes made to the loaded listings; null if they are not logged. */
+    private static MutationLog mutationLog;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int LOG_BUFFER_CAPACITY = 1 << 14;
+    /** Files at least this large are memory-mapped and parsed in parallel. */
+    private static final long BULK_LOAD_THRESHOLD = 8L << 20;
 
     static {
         try {
@@ -296,8 +500,9 @@ public class RealEstateAgent {
             ConsoleHandler ch = new ConsoleHandler();
             ch.setLevel(Level.INFO);
 
-            logger.addHandler(fh);
-            logger.addHandler(ch);
+            // Handlers sit on the root logger so model classes log through them too.
+            // Their hot-path messages are FINE/FINEST and stay off at the root's INFO level.
+            Logger.getLogger("").addHandler(new AsyncLogHandler(LOG_BUFFER_CAPACITY, fh, ch));
 
             logger.setLevel(Level.ALL);
         } catch (IOException e) {
@@ -305,22 +510,133 @@ public class RealEstateAgent {
         }
     }
 
+    /**
+     * Loads the listings of a file, from its snapshot if there is a current
+     * one. Otherwise the file is parsed and a new snapshot is written for the
+     * next start. The changes logged since the snapshot are then replayed
+     * and checkpointed, and later changes are logged; see {@link MutationLog}.
+     * If the log cannot be opened or replayed, the listings are loaded again
+     * without its changes and later changes are not logged.
+     *
+     * @param filename The listing file.
+     */
+    public static void loadListings(String filename) {
+        Path file = Path.of(filename);
+        Path snapshot = Snapshot.pathFor(file);
+        Snapshot.Source source;
+        try {
+            source = Snapshot.Source.of(file);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading file attributes, loading listing file", e);
+            loadFromFile(filename);
+            return;
+        }
+        int checkpoint = loadBase(filename, snapshot, source);
+        if (checkpoint < 0) return;
+        try {
+            mutationLog = MutationLog.open(MutationLog.pathFor(file), snapshot, source, checkpoint, properties);
+        } catch (IOException | RuntimeException e) {
+            // A failed replay may have applied part of the log, so start over from the listings alone.
+            logger.log(Level.SEVERE, "Error replaying mutation log, reloading listings; changes will not be logged", e);
+            properties.clear();
+            loadBase(filename, snapshot, source);
+        }
+    }
+
+    /**
+     * Loads the listings of a file from its snapshot if there is a current
+     * one, or else parses the file and writes a snapshot at checkpoint 0.
+     *
+     * @return The checkpoint number of the loaded listings, or -1 if sample data was loaded.
+     */
+    private static int loadBase(String filename, Path snapshot, Snapshot.Source source) {
+        try {
+            int checkpoint = Snapshot.read(snapshot, source, properties);
+            if (checkpoint >= 0) {
+                logger.info("Loaded " + properties.size() + " properties from snapshot " + snapshot);
+                return checkpoint;
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading snapshot, loading listing file", e);
+        } catch (RuntimeException e) {
+            // A snapshot that passed its checks but still failed may have added some listings.
+            logger.log(Level.SEVERE, "Error restoring snapshot, loading listing file", e);
+            properties.clear();
+        }
+        if (!loadFromFile(filename)) return -1;
+        try {
+            Snapshot.write(snapshot, source, properties, 0);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing snapshot", e);
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the logged changes that are not on disk yet and closes the
+     * mutation log.
+     */
+    public static void closeMutationLog() {
+        if (mutationLog == null) return;
+        properties.setMutationListener(null);
+        try {
+            mutationLog.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error closing mutation log", e);
+        }
+        mutationLog = null;
+    }
+
     /**
      * Loads real estate data from a file.
      *
      * @param filename The input filename containing real estate data.
+     * @return true if the listings were read from the file, false if sample data was loaded instead.
      */
-    public static void loadFromFile(String filename) {
+    public static boolean loadFromFile(String filename) {
         logger.info("Loading properties from file: " + filename);
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                parseLine(line);
+        File file = new File(filename);
+        if (file.length() >= BULK_LOAD_THRESHOLD) {
+            try {
+                BulkLoader.LoadStats stats = new BulkLoader().load(file.toPath(), properties);
+                logger.info("Loaded " + properties.size() + " properties from file: " + stats);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error reading file, loading sample data", e);
+                loadSampleData();
+                return false;
             }
+            return true;
+        }
+        try (InputStream in = new FileInputStream(filename)) {
+            ListingParser parser = new ListingParser();
+            ListingRecord record = new ListingRecord();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(buffer);
+            int filled = 0;
+            int read;
+            while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+                filled += read;
+                int lineStart = 0;
+                for (int i = 0; i < filled; i++) {
+                    if (buffer[i] == '\n') {
+                        parseLine(parser, view, lineStart, i, record);
+                        lineStart = i + 1;
+                    }
+                }
+                System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                filled -= lineStart;
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    view = ByteBuffer.wrap(buffer);
+                }
+            }
+            parseLine(parser, view, 0, filled, record);
             logger.info("Loaded " + properties.size() + " properties from file.");
+            return true;
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error reading file, loading sample data", e);
             loadSampleData();
+            return false;
         }
     }
 
@@ -329,26 +645,37 @@ public class RealEstateAgent {
      *
      * @param line One line of input data to parse.
      */
-    private static void parseLine(String line) {
-        logger.info("Parsing line: " + line);
-        try {
-            String[] parts = line.split("#");
-            String className = parts[0];
-            String city = parts[1];
-            double price = Double.parseDouble(parts[2]);
-            int sqm = Integer.parseInt(parts[3]);
-            double numberOfRooms = Double.parseDouble(parts[4]);
-            Genre genre = Genre.valueOf(parts[5]);
-
-            if (className.equals("PANEL") && parts.length >= 8) {
-                int floor = Integer.parseInt(parts[6]);
-                boolean isInsulated = parts[7].equalsIgnoreCase("yes");
-                properties.add(new Panel(city, price, sqm, numberOfRooms, genre, floor, isInsulated));
-            } else {
-                properties.add(new RealEstate(city, price, sqm, numberOfRooms, genre));
+    static void parseLine(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        parseLine(new ListingParser(), ByteBuffer.wrap(bytes), 0, bytes.length, new ListingRecord());
+    }
+
+    /**
+     * Parses one line held in a buffer and adds the resulting listing to the
+     * store. Blank lines are skipped; invalid lines, including listings whose
+     * total price overflows, are logged.
+     *
+     * @param parser The parser to use.
+     * @param buffer The buffer holding the line.
+     * @param start Index of the first byte of the line.
+     * @param end Index just past the last byte of the line.
+     * @param record Reusable record to parse into.
+     */
+    private static void parseLine(ListingParser parser, ByteBuffer buffer, int start, int end, ListingRecord record) {
+        if (ListingParser.isBlank(buffer, start, end)) return;
+        String error = null;
+        if (parser.parse(buffer, start, end, record)) {
+            try {
+                properties.add(record.toRealEstate());
+            } catch (ArithmeticException e) {
+                // A total or sum that overflows; the store is left unchanged.
+                error = e.getMessage();
             }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error parsing line: " + line, e);
+        } else {
+            error = parser.error();
+        }
+        if (error != null) {
+            logger.severe("Error parsing line: " + ListingParser.text(buffer, start, end) + " (" + error + ")");
         }
     }
 
@@ -357,10 +684,96 @@ public class RealEstateAgent {
      */
     private static void loadSampleData() {
         logger.info("Loading sample data.");
-        properties.add(new RealEstate("Budapest", 250000, 100, 4, Genre.CONDOMINIUM));
-        properties.add(new RealEstate("Debrecen", 220000, 120, 5, Genre.FAMILYHOUSE));
-        properties.add(new RealEstate("Nyíregyháza", 110000, 60, 2, Genre.FARM));
-        properties.add(new Panel("Budapest", 180000, 70, 3, Genre.CONDOMINIUM, 4, false));
+        properties.addAll(sampleListings());
+    }
+
+    private static List<RealEstate> sampleListings() {
+        return List.of(
+                new RealEstate("Budapest", 250000, 100, 4, Genre.CONDOMINIUM),
+                new RealEstate("Debrecen", 220000, 120, 5, Genre.FAMILYHOUSE),
+                new RealEstate("Nyíregyháza", 110000, 60, 2, Genre.FARM),
+                new Panel("Budapest", 180000, 70, 3, Genre.CONDOMINIUM, 4, false));
+    }
+
+    /**
+     * Loads the listings of a file into a {@link ColumnarStore} instead of
+     * the store, at about 30 bytes per listing. Tables have no indexes,
+     * snapshot or mutation log; they serve the reports only. If the file
+     * cannot be read, the sample data is loaded instead.
+     *
+     * @param filename The listing file.
+     * @return The loaded table.
+     */
+    public static ColumnarStore loadColumnar(String filename) {
+        logger.info("Loading properties from file into a columnar store: " + filename);
+        ColumnarStore table = new ColumnarStore();
+        try {
+            BulkLoader.LoadStats stats = new BulkLoader().loadColumnar(Path.of(filename), table);
+            logger.info("Loaded " + table.size() + " properties from file: " + stats);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading file, loading sample data", e);
+            for (RealEstate property : sampleListings()) table.add(property);
+        }
+        return table;
+    }
+
+    /**
+     * Loads the listings of a file into an {@link OffHeapStore}, outside the
+     * Java heap, for the reports only like {@link #loadColumnar(String)}.
+     * The caller closes the store. If the file cannot be read, the sample
+     * data is loaded instead.
+     *
+     * @param filename The listing file.
+     * @return The loaded table.
+     */
+    public static OffHeapStore loadOffHeap(String filename) {
+        logger.info("Loading properties from file into an off-heap store: " + filename);
+        OffHeapStore table = new OffHeapStore();
+        try {
+            BulkLoader.LoadStats stats = new BulkLoader().loadOffHeap(Path.of(filename), table);
+            logger.info("Loaded " + table.size() + " properties from file: " + stats);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading file, loading sample data", e);
+            for (RealEstate property : sampleListings()) table.add(property);
+        }
+        return table;
+    }
+
+    /**
+     * Finds the loaded properties matching all given criteria, using the
+     * store's city, genre and price indexes.
+     *
+     * @param city The city, or null for any city.
+     * @param genre The genre, or null for any genre.
+     * @param minTotalPrice Lowest total price in minor units, inclusive.
+     * @param maxTotalPrice Highest total price in minor units, inclusive.
+     * @param minRooms Lowest number of rooms, inclusive.
+     * @param maxRooms Highest number of rooms, inclusive.
+     * @return The matching properties.
+     */
+    public static List<RealEstate> find(String city, Genre genre, long minTotalPrice, long maxTotalPrice,
+                                        double minRooms, double maxRooms) {
+        return properties.find(city, genre, minTotalPrice, maxTotalPrice, minRooms, maxRooms);
+    }
+
+    /**
+     * Lowers the price of every loaded property of a city and genre by the
+     * same percentage, e.g. 10% off every farm in Debrecen, as one batch.
+     *
+     * @param city The city, or null for every city.
+     * @param genre The genre, or null for every genre.
+     * @param percentage The discount, from 0 to 100.
+     * @return The number of properties discounted; 0 if the percentage is invalid.
+     */
+    public static int applyDiscount(String city, Genre genre, int percentage) {
+        if (percentage < 0 || percentage > 100) {
+            logger.severe("Invalid discount: " + percentage);
+            return 0;
+        }
+        int discounted = properties.discount(city, genre, Long.MIN_VALUE, Long.MAX_VALUE,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, percentage);
+        logger.info("Discounted " + discounted + " properties by " + percentage + "%");
+        return discounted;
     }
 
     /**
@@ -370,24 +783,294 @@ public class RealEstateAgent {
      */
     public static void generateReport(String outputFile) {
         logger.info("Generating report: " + outputFile);
+        writeReport(properties.summary(), outputFile);
+    }
+
+    /**
+     * Writes the summary report and the requested top, grouped and
+     * distribution reports of listings held in a table rather than in the
+     * store. The references of the top lists are row numbers.
+     *
+     * @param table The listings to report on.
+     * @param top Number of properties per top list, or 0 for no top report.
+     * @param grouped Whether to write the grouped report.
+     * @param distribution Whether to write the distribution report.
+     */
+    public static void generateTableReports(ListingTable table, int top, boolean grouped, boolean distribution) {
+        logger.info("Generating reports of " + table.size() + " properties in a " + table.getClass().getSimpleName());
+        writeReport(ReportSummary.of(table), "outputRealEstate.txt");
+        if (top > 0) writeTopReport(TopListings.of(table, top), "outputTopRealEstate.txt", rows -> tableListings(table, rows));
+        if (grouped) writeGroupedReport(GroupedReport.of(table), "outputGroupedRealEstate.txt");
+        if (distribution) writeDistributionReport(PriceDistribution.of(table), "outputDistributionRealEstate.txt");
+    }
+
+    private static List<RealEstate> tableListings(ListingTable table, long[] rows) {
+        ListingView view = table.view();
+        List<RealEstate> listings = new ArrayList<>(rows.length);
+        for (long row : rows) listings.add(view.moveTo((int) row).toRealEstate());
+        return listings;
+    }
+
+    /**
+     * Writes the summary report the loaded properties would have under a
+     * what-if scenario, without changing them.
+     *
+     * @param scenario The rule overrides, discounts and listing changes to preview.
+     * @param outputFile The name of the output report file.
+     */
+    public static void generateScenarioReport(Scenario scenario, String outputFile) {
+        logger.info("Generating scenario report: " + outputFile);
+        writeReport(scenario.summarize(properties), outputFile);
+    }
+
+    /**
+     * Generates the summary report straight from a listing file, without
+     * loading the listings into the store. Memory use stays constant, so files
+     * larger than the heap can be summarized.
+     *
+     * @param inputFile The listing file to summarize.
+     * @param outputFile The name of the output report file.
+     */
+    public static void generateStreamingReport(String inputFile, String outputFile) {
+        logger.info("Generating streaming report of " + inputFile + ": " + outputFile);
+        ReportSummary summary = new ReportSummary();
+        try {
+            BulkLoader.LoadStats stats = new BulkLoader().summarize(Path.of(inputFile), summary);
+            logger.info("Summarized file " + inputFile + ": " + stats);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading file, no report written", e);
+            return;
+        }
+        writeReport(summary, outputFile);
+    }
+
+    /**
+     * Writes the K cheapest and K most expensive loaded properties, overall
+     * and per city, to a text file.
+     *
+     * @param outputFile The name of the output report file.
+     * @param k Number of properties per list.
+     */
+    public static void generateTopReport(String outputFile, int k) {
+        logger.info("Generating top " + k + " report: " + outputFile);
+        writeTopReport(TopListings.of(properties, k), outputFile, RealEstateAgent::storeListings);
+    }
+
+    private static List<RealEstate> storeListings(long[] ids) {
+        List<RealEstate> listings = new ArrayList<>(ids.length);
+        for (long id : ids) listings.add(properties.get((int) id));
+        return listings;
+    }
+
+    /**
+     * Writes the K cheapest and K most expensive properties of a listing
+     * file, overall and per city, without loading the file into the store.
+     * Only the listed lines are read a second time.
+     *
+     * @param inputFile The listing file.
+     * @param outputFile The name of the output report file.
+     * @param k Number of properties per list.
+     */
+    public static void generateStreamingTopReport(String inputFile, String outputFile, int k) {
+        logger.info("Generating streaming top " + k + " report of " + inputFile + ": " + outputFile);
+        Path file = Path.of(inputFile);
+        TopListings top = new TopListings(k, PricingRules.current());
+        try {
+            BulkLoader.LoadStats stats = new BulkLoader().top(file, top);
+            logger.info("Ranked file " + inputFile + ": " + stats);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading file, no report written", e);
+            return;
+        }
+        writeTopReport(top, outputFile, refs -> BulkLoader.fetch(file, refs));
+    }
+
+    /** Resolves the references collected by {@link TopListings} to properties. */
+    private interface ListingLookup {
+        List<RealEstate> get(long[] refs) throws IOException;
+    }
+
+    private static void writeTopReport(TopListings top, String outputFile, ListingLookup lookup) {
         StringBuilder output = new StringBuilder();
+        try {
+            appendTop(output, "Cheapest", "", top.cheapest(), lookup);
+            appendTop(output, "Most expensive", "", top.mostExpensive(), lookup);
+            List<Integer> cityIds = new ArrayList<>();
+            for (int cityId : top.cityIds()) cityIds.add(cityId);
+            cityIds.sort(Comparator.comparing(CityDictionary::nameOf));
+            for (int cityId : cityIds) {
+                String in = " in " + CityDictionary.nameOf(cityId);
+                appendTop(output, "Cheapest", in, top.cheapest(cityId), lookup);
+                appendTop(output, "Most expensive", in, top.mostExpensive(cityId), lookup);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading listings, no report written", e);
+            return;
+        }
+        writeOutput(output, outputFile);
+    }
 
-        double avgSqmPrice = properties.stream()
-                .mapToDouble(RealEstate::getPrice)
-                .average()
-                .orElse(0.0);
-        output.append(String.format("Average sqm price: %.2f%n", avgSqmPrice));
+    private static void appendTop(StringBuilder output, String label, String in, TopK heap, ListingLookup lookup)
+            throws IOException {
+        output.append(String.format("%s %d properties%s:%n", label, heap.k(), in));
+        List<RealEstate> listings = lookup.get(heap.sortedRefs());
+        for (int i = 0; i < listings.size(); i++) {
+            output.append(String.format("%d. %s%n", i + 1, listings.get(i)));
+        }
+        output.append(System.lineSeparator());
+    }
 
-        int cheapestPrice = properties.stream()
-                .mapToInt(RealEstate::getTotalPrice)
-                .min().orElse(0);
-        output.append(String.format("Cheapest property: %d%n", cheapestPrice));
+    /**
+     * Writes the report figures grouped by city, by genre and by city and
+     * genre of the loaded properties to a text file.
+     *
+     * @param outputFile The name of the output report file.
+     */
+    public static void generateGroupedReport(String outputFile) {
+        logger.info("Generating grouped report: " + outputFile);
+        writeGroupedReport(GroupedReport.of(properties), outputFile);
+    }
 
-        long totalPrice = properties.stream()
-                .mapToLong(RealEstate::getTotalPrice)
-                .sum();
-        output.append(String.format("Total of all properties: %d%n", totalPrice));
+    /**
+     * Writes the grouped report figures of a listing file without loading
+     * the file into the store.
+     *
+     * @param inputFile The listing file.
+     * @param outputFile The name of the output report file.
+     */
+    public static void generateStreamingGroupedReport(String inputFile, String outputFile) {
+        logger.info("Generating streaming grouped report of " + inputFile + ": " + outputFile);
+        GroupedReport report = new GroupedReport(PricingRules.current());
+        try {
+            BulkLoader.LoadStats stats = new BulkLoader().group(Path.of(inputFile), report);
+            logger.info("Grouped file " + inputFile + ": " + stats);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading file, no report written", e);
+            return;
+        }
+        writeGroupedReport(report, outputFile);
+    }
 
+    private static void writeGroupedReport(GroupedReport report, String outputFile) {
+        List<Integer> cityIds = new ArrayList<>();
+        for (int cityId : report.cityIds()) cityIds.add(cityId);
+        cityIds.sort(Comparator.comparing(CityDictionary::nameOf));
+
+        StringBuilder output = new StringBuilder();
+        output.append(String.format("By city:%n"));
+        for (int cityId : cityIds) {
+            appendGroup(output, CityDictionary.nameOf(cityId), report.city(cityId));
+        }
+        output.append(String.format("%nBy genre:%n"));
+        for (Genre genre : Genre.values()) {
+            appendGroup(output, genre.name(), report.genre(genre));
+        }
+        output.append(String.format("%nBy city and genre:%n"));
+        for (int cityId : cityIds) {
+            for (Genre genre : Genre.values()) {
+                appendGroup(output, CityDictionary.nameOf(cityId) + " / " + genre, report.cityAndGenre(cityId, genre));
+            }
+        }
+        writeOutput(output, outputFile);
+    }
+
+    private static void appendGroup(StringBuilder output, String group, ReportSummary summary) {
+        if (summary.count() == 0) return;
+        output.append(String.format(
+                "%s: Count: %d, Average sqm price: %.2f, Cheapest: %s, Most expensive: %s, Total: %s, Avg sqm/room: %.2f%n",
+                group, summary.count(), summary.averageSqmPrice(), Money.format(summary.cheapestTotalPrice()),
+                Money.format(summary.mostExpensiveTotalPrice()), Money.format(summary.totalPrice()),
+                summary.averageSqmPerRoom()));
+    }
+
+    /**
+     * Writes the percentiles and histograms of total price and price per
+     * square meter of the loaded properties, overall, per city and per genre,
+     * to a text file.
+     *
+     * @param outputFile The name of the output report file.
+     */
+    public static void generateDistributionReport(String outputFile) {
+        logger.info("Generating distribution report: " + outputFile);
+        writeDistributionReport(PriceDistribution.of(properties), outputFile);
+    }
+
+    /**
+     * Writes the price distribution report of one or more listing files
+     * without loading them into the store.
+     *
+     * @param outputFile The name of the output report file.
+     * @param inputFiles The listing files.
+     */
+    public static void generateStreamingDistributionReport(String outputFile, String... inputFiles) {
+        logger.info("Generating streaming distribution report: " + outputFile);
+        PriceDistribution distribution = new PriceDistribution(PricingRules.current());
+        BulkLoader loader = new BulkLoader();
+        for (String inputFile : inputFiles) {
+            try {
+                BulkLoader.LoadStats stats = loader.distribution(Path.of(inputFile), distribution);
+                logger.info("Sketched file " + inputFile + ": " + stats);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error reading file, no report written", e);
+                return;
+            }
+        }
+        writeDistributionReport(distribution, outputFile);
+    }
+
+    private static void writeDistributionReport(PriceDistribution distribution, String outputFile) {
+        List<Integer> cityIds = new ArrayList<>();
+        for (int cityId : distribution.cityIds()) cityIds.add(cityId);
+        cityIds.sort(Comparator.comparing(CityDictionary::nameOf));
+
+        StringBuilder output = new StringBuilder();
+        appendDistribution(output, "All properties", distribution.overall());
+        for (int cityId : cityIds) {
+            appendDistribution(output, CityDictionary.nameOf(cityId), distribution.city(cityId));
+        }
+        for (Genre genre : Genre.values()) {
+            appendDistribution(output, genre.name(), distribution.genre(genre));
+        }
+        writeOutput(output, outputFile);
+    }
+
+    private static void appendDistribution(StringBuilder output, String group, PriceDistribution.Group stats) {
+        if (stats.totalPrice.count() == 0) return;
+        output.append(String.format("%s (%d properties):%n", group, stats.totalPrice.count()));
+        appendPercentiles(output, "Total price", stats.totalPrice);
+        appendPercentiles(output, "Price/sqm", stats.sqmPrice);
+        appendHistogram(output, "Total price", stats.totalPriceHistogram);
+        appendHistogram(output, "Price/sqm", stats.sqmPriceHistogram);
+        output.append(System.lineSeparator());
+    }
+
+    private static void appendPercentiles(StringBuilder output, String label, QuantileSketch sketch) {
+        output.append(String.format("  %s: p50 %s, p90 %s, p99 %s%n", label,
+                Money.format(sketch.quantile(0.5)), Money.format(sketch.quantile(0.9)),
+                Money.format(sketch.quantile(0.99))));
+    }
+
+    private static void appendHistogram(StringBuilder output, String label, Histogram histogram) {
+        output.append(String.format("  %s histogram:%n", label));
+        for (int bucket = 0; bucket < histogram.buckets(); bucket++) {
+            if (histogram.count(bucket) == 0) continue;
+            String range;
+            if (bucket == 0) range = "< " + Money.format(histogram.upperBound(bucket));
+            else if (bucket == histogram.buckets() - 1) range = ">= " + Money.format(histogram.lowerBound(bucket));
+            else range = "[" + Money.format(histogram.lowerBound(bucket)) + ", " + Money.format(histogram.upperBound(bucket)) + ")";
+            output.append(String.format("    %s: %d%n", range, histogram.count(bucket)));
+        }
+    }
+
+    private static void writeReport(ReportSummary summary, String outputFile) {
+        StringBuilder output = new StringBuilder();
+        output.append(String.format("Average sqm price: %.2f%n", summary.averageSqmPrice()));
+        output.append(String.format("Cheapest property: %s%n", Money.format(summary.cheapestTotalPrice())));
+        output.append(String.format("Total of all properties: %s%n", Money.format(summary.totalPrice())));
+        writeOutput(output, outputFile);
+    }
+
+    private static void writeOutput(StringBuilder output, String outputFile) {
         try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile))) {
             writer.print(output.toString());
             logger.info("Report successfully written to " + outputFile);
@@ -396,8 +1079,131 @@ public class RealEstateAgent {
         }
     }
 
+    /**
+     * Loads a listing file and keeps following it: lines appended to the file
+     * are added to the store and the reports are rewritten after each update.
+     * The top, grouped and distribution figures are updated with the new
+     * listings only, so an update costs in proportion to the appended lines.
+     * Runs until the thread is interrupted.
+     *
+     * @param inputFile The listing file to follow.
+     * @param top Number of properties per top list, or 0 for no top report.
+     * @param grouped Whether to write the grouped report.
+     * @param distribution Whether to write the distribution report.
+     */
+    public static void watchFeed(String inputFile, int top, boolean grouped, boolean distribution) {
+        try (FeedWatcher watcher = new FeedWatcher(Path.of(inputFile), new LiveReports(top, grouped, distribution))) {
+            watcher.watch();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error watching file " + inputFile, e);
+        }
+    }
+
+    /**
+     * Adds the listings found by a {@link FeedWatcher} to the store and to the
+     * requested report figures, and rewrites the reports after each update.
+     */
+    private static final class LiveReports implements FeedWatcher.Listener {
+        private final int k;
+        private final boolean grouped;
+        private final boolean distribution;
+        private TopListings topListings;
+        private GroupedReport groupedReport;
+        private PriceDistribution priceDistribution;
+
+        LiveReports(int k, boolean grouped, boolean distribution) {
+            this.k = k;
+            this.grouped = grouped;
+            this.distribution = distribution;
+            reset();
+        }
+
+        @Override
+        public void accept(ListingRecord record) {
+            RealEstate property = record.toRealEstate();
+            int id = properties.add(property);
+            if (topListings != null) topListings.accept(property.getCityId(), property.getTotalPrice(), id);
+            if (groupedReport != null) groupedReport.accept(property);
+            if (priceDistribution != null) priceDistribution.accept(property);
+        }
+
+        @Override
+        public void updated(BulkLoader.LoadStats stats) {
+            logger.info("Added listings: " + stats + ", " + properties.size() + " properties in total");
+            writeReport(properties.summary(), "outputRealEstate.txt");
+            if (topListings != null) writeTopReport(topListings, "outputTopRealEstate.txt", RealEstateAgent::storeListings);
+            if (groupedReport != null) writeGroupedReport(groupedReport, "outputGroupedRealEstate.txt");
+            if (priceDistribution != null) writeDistributionReport(priceDistribution, "outputDistributionRealEstate.txt");
+        }
+
+        @Override
+        public void truncated() {
+            for (int id = 0; id < properties.idLimit(); id++) {
+                if (properties.get(id) != null) properties.remove(id);
+            }
+            reset();
+        }
+
+        private void reset() {
+            PricingRules rules = PricingRules.current();
+            topListings = k > 0 ? new TopListings(k, rules) : null;
+            groupedReport = grouped ? new GroupedReport(rules) : null;
+            priceDistribution = distribution ? new PriceDistribution(rules) : null;
+        }
+    }
+
+    /**
+     * Reads pricing rules from a file and swaps them in atomically. Listings
+     * are repriced lazily on their next access. If the file cannot be read,
+     * the rules in effect are kept.
+     *
+     * @param rulesFile The pricing rules file.
+     */
+    public static void loadPricingRules(String rulesFile) {
+        logger.info("Loading pricing rules from file: " + rulesFile);
+        try {
+            PricingRules.install(PricingRules.load(Path.of(rulesFile)));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Error reading pricing rules, keeping current rules", e);
+        }
+    }
+
+    /** Where {@link #main} keeps the loaded listings, chosen with {@code --store}. */
+    private enum StoreType {
+        /** Listing objects in the indexed {@link PropertyStore}. */
+        HEAP,
+        /** Primitive columns in a {@link ColumnarStore}. */
+        COLUMNAR,
+        /** Fixed-width records outside the heap in an {@link OffHeapStore}. */
+        OFFHEAP
+    }
+
+    private static final String USAGE = "Usage: java RealEstateAgent [--stream | --watch] [--store heap|columnar|offheap]"
+            + " [--top K] [--grouped] [--distribution] [listingFile]";
+
+    private static void usageError(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+    }
+
     /**
      * Application entry point.
+     * <p>
+     * Usage: {@code java RealEstateAgent [--stream | --watch] [--store heap|columnar|offheap] [--top K] [--grouped]
+     * [--distribution] [listingFile]}.
+     * The listing file defaults to realestates.txt and is read from its
+     * snapshot when the snapshot is current; with {@code --stream} only
+     * the report is produced, without loading the listings. {@code --top K}
+     * also writes the K cheapest and most expensive properties to
+     * outputTopRealEstate.txt, and {@code --grouped} writes the figures by
+     * city and genre to outputGroupedRealEstate.txt. {@code --distribution}
+     * writes price percentiles and histograms to outputDistributionRealEstate.txt.
+     * With {@code --watch} the application keeps running and updates the
+     * store and the reports as lines are appended to the listing file.
+     * {@code --store columnar} loads the listings into a {@link ColumnarStore}
+     * and {@code --store offheap} into an {@link OffHeapStore} for the reports
+     * instead of the default {@code heap} store; neither can be combined with
+     * {@code --stream} or {@code --watch}.
      *
      * @param args Command-line arguments.
      */
@@ -405,10 +1211,71 @@ public class RealEstateAgent {
         logger.info("Application started.");
         System.out.println("Real Estate Management System\n");
 
-        loadFromFile("realestates.txt");
+        boolean streaming = false;
+        boolean watching = false;
+        boolean grouped = false;
+        boolean distribution = false;
+        int top = 0;
+        StoreType storeType = StoreType.HEAP;
+        String inputFile = "realestates.txt";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--stream")) streaming = true;
+            else if (args[i].equals("--watch")) watching = true;
+            else if (args[i].equals("--grouped")) grouped = true;
+            else if (args[i].equals("--distribution")) distribution = true;
+            else if (args[i].equals("--top")) {
+                try {
+                    top = Integer.parseInt(args[++i]);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    top = 0;
+                }
+                if (top <= 0) {
+                    usageError("--top needs a positive number of properties");
+                    return;
+                }
+            } else if (args[i].equals("--store")) {
+                try {
+                    storeType = StoreType.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                    usageError("--store needs one of heap, columnar, offheap");
+                    return;
+                }
+            } else inputFile = args[i];
+        }
+        if (storeType != StoreType.HEAP && (streaming || watching)) {
+            usageError("--store " + storeType.name().toLowerCase(Locale.ROOT) + " cannot be combined with --stream or --watch");
+            return;
+        }
 
-        System.out.println("\n=== REPORT ===\n");
-        generateReport("outputRealEstate.txt");
+        loadPricingRules("pricing.properties");
+        if (watching) {
+            watchFeed(inputFile, top, grouped, distribution);
+        } else if (streaming) {
+            System.out.println("\n=== REPORT ===\n");
+            generateStreamingReport(inputFile, "outputRealEstate.txt");
+            if (top > 0) generateStreamingTopReport(inputFile, "outputTopRealEstate.txt", top);
+            if (grouped) generateStreamingGroupedReport(inputFile, "outputGroupedRealEstate.txt");
+            if (distribution) generateStreamingDistributionReport("outputDistributionRealEstate.txt", inputFile);
+        } else if (storeType == StoreType.COLUMNAR) {
+            ColumnarStore table = loadColumnar(inputFile);
+
+            System.out.println("\n=== REPORT ===\n");
+            generateTableReports(table, top, grouped, distribution);
+        } else if (storeType == StoreType.OFFHEAP) {
+            try (OffHeapStore table = loadOffHeap(inputFile)) {
+                System.out.println("\n=== REPORT ===\n");
+                generateTableReports(table, top, grouped, distribution);
+            }
+        } else {
+            loadListings(inputFile);
+
+            System.out.println("\n=== REPORT ===\n");
+            generateReport("outputRealEstate.txt");
+            if (top > 0) generateTopReport("outputTopRealEstate.txt", top);
+            if (grouped) generateGroupedReport("outputGroupedRealEstate.txt");
+            if (distribution) generateDistributionReport("outputDistributionRealEstate.txt");
+            closeMutationLog();
+        }
 
         logger.info("Application finished.");
     }
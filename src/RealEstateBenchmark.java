@@ -0,0 +1,168 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.LogManager;
+
+/**
+ * Stress run of a {@link PropertyStore} under concurrent use: measures how
+ * read throughput scales with the number of reader threads while one writer
+ * changes the store continuously.
+ * <p>
+ * Usage: {@code java RealEstateBenchmark --stress [size] [seconds]}. The
+ * micro-benchmarks of the parse, price, sort and report paths are JMH
+ * benchmarks in {@code jmh/}, built with {@code mvn -Pjmh package}.
+ */
+public class RealEstateBenchmark {
+
+    private static final String[] CITIES = {"Budapest", "Debrecen", "Nyíregyháza", "Kisvárda", "Tiszaújváros"};
+    private static final int DEFAULT_STRESS_SIZE = 100_000;
+    private static final int DEFAULT_STRESS_SECONDS = 2;
+    /** Every this many reads, a reader runs an indexed find instead of a lookup. */
+    private static final int STRESS_FIND_INTERVAL = 1024;
+    /** Every this many writes, the writer runs a bulk discount instead of a price change. */
+    private static final int STRESS_DISCOUNT_INTERVAL = 10_000;
+
+    /**
+     * Runs the stress run.
+     *
+     * @param args {@code --stress}, then optionally the number of listings and
+     *             the seconds per run.
+     */
+    public static void main(String[] args) {
+        LogManager.getLogManager().reset();
+        if (args.length == 0 || !args[0].equals("--stress")) {
+            System.err.println("Usage: java RealEstateBenchmark --stress [size] [seconds]");
+            return;
+        }
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STRESS_SIZE;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_STRESS_SECONDS;
+        stress(size, seconds);
+    }
+
+    /**
+     * Runs 1, 2, 4, ... reader threads, up to the number of processors, against
+     * one writer that keeps changing prices and now and then discounts a whole
+     * city. Readers mix live summaries, lookups by ID and indexed finds, and
+     * check each answer against invariants a torn read would break.
+     */
+    private static void stress(int size, int seconds) {
+        PropertyStore store = new PropertyStore(size);
+        parseAll(ByteBuffer.wrap(syntheticFile(size, 42L)), store);
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d listings, %d processors, %d s per run%n", size, processors, seconds);
+        System.out.printf("%-8s %14s %14s %12s %10s%n", "readers", "reads/s", "reads/s/thread", "writes/s", "failures");
+        for (int readers = 1; ; readers = Math.min(readers * 2, processors)) {
+            stressRun(store, readers, seconds);
+            if (readers == processors) break;
+        }
+    }
+
+    private static void stressRun(PropertyStore store, int readers, int seconds) {
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] reads = new long[readers];
+        long[] failures = new long[readers + 1];
+        long[] writes = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(7);
+            long count = 0;
+            while (running.get()) {
+                if (++count % STRESS_DISCOUNT_INTERVAL == 0) {
+                    store.discount(CITIES[random.nextInt(CITIES.length)], null, Long.MIN_VALUE, Long.MAX_VALUE,
+                            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 1);
+                    continue;
+                }
+                RealEstate property = store.get(random.nextInt(store.idLimit()));
+                if (property == null) {
+                    failures[readers]++;
+                } else {
+                    property.setPrice(100_000 + random.nextInt(400_000));
+                }
+            }
+            writes[0] = count;
+        }, "stress-writer"));
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            threads.add(new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(reader);
+                Genre[] genres = Genre.values();
+                long count = 0;
+                while (running.get()) {
+                    ReportSummary summary = store.summary();
+                    if (!isConsistent(summary, store.idLimit())) failures[reader]++;
+                    if (count % STRESS_FIND_INTERVAL == 0) {
+                        Genre genre = genres[random.nextInt(genres.length)];
+                        for (RealEstate property : store.find(CITIES[random.nextInt(CITIES.length)], genre,
+                                0, Long.MAX_VALUE, 2, 4)) {
+                            if (property.getGenre() != genre) failures[reader]++;
+                        }
+                    } else if (store.get(random.nextInt(store.idLimit())) == null) {
+                        failures[reader]++;
+                    }
+                    count += 2;
+                }
+                reads[reader] = count;
+            }, "stress-reader-" + r));
+        }
+        threads.forEach(Thread::start);
+        try {
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+            for (Thread thread : threads) thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running.set(false);
+            return;
+        }
+        long totalReads = Arrays.stream(reads).sum();
+        System.out.printf("%-8d %14.0f %14.0f %12.0f %10d%n", readers, totalReads / (double) seconds,
+                totalReads / (double) seconds / readers, writes[0] / (double) seconds, Arrays.stream(failures).sum());
+    }
+
+    /** The figures of a store that only ever holds its initial listings, with prices changing. */
+    private static boolean isConsistent(ReportSummary summary, int size) {
+        long count = summary.count();
+        return count == size
+                && summary.cheapestTotalPrice() <= summary.mostExpensiveTotalPrice()
+                && summary.totalPrice() >= summary.cheapestTotalPrice() * count
+                && summary.totalPrice() <= summary.mostExpensiveTotalPrice() * count;
+    }
+
+    private static long parseAll(ByteBuffer buffer, PropertyStore store) {
+        ListingParser parser = new ListingParser();
+        ListingRecord record = new ListingRecord();
+        long checksum = 0;
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) != '\n') continue;
+            if (parser.parse(buffer, lineStart, i, record)) {
+                checksum += record.sqm;
+                if (store != null) store.add(record.toRealEstate());
+            }
+            lineStart = i + 1;
+        }
+        return checksum;
+    }
+
+    /**
+     * Builds an in-memory listing file over five cities with 25% panels.
+     */
+    private static byte[] syntheticFile(int lines, long seed) {
+        ListingGenerator generator = new ListingGenerator();
+        generator.setSeed(seed);
+        Map<String, Double> cities = new LinkedHashMap<>();
+        for (String city : CITIES) cities.put(city, 1.0);
+        generator.setCityWeights(cities);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 48);
+        try {
+            generator.generate(out, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
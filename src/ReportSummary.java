@@ -0,0 +1,201 @@
+import java.util.stream.IntStream;
+
+/**
+ * Accumulates every statistic of the summary report in a single pass.
+ * <p>
+ * Summaries of disjoint parts of the data can be merged with
+ * {@link #combine(ReportSummary)}, so the same accumulator works on a
+ * sequential scan, a parallel stream or separately processed chunks.
+ * <p>
+ * Prices and totals are {@link Money} minor units and are summed exactly; a
+ * sum that would exceed the {@code long} range raises
+ * {@link ArithmeticException} rather than wrapping around.
+ */
+class ReportSummary {
+
+    /** Stores smaller than this are summarized on the calling thread. */
+    static final int PARALLEL_THRESHOLD = 10_000;
+    /** Rows per task when a {@link ListingTable} is scanned in parallel. */
+    static final int SCAN_CHUNK = 1 << 16;
+
+    private long count;
+    private long sumPrice;
+    private long sumTotalPrice;
+    private long minTotalPrice = Long.MAX_VALUE;
+    private long maxTotalPrice = Long.MIN_VALUE;
+    private double sumSqmPerRoom;
+
+    /**
+     * Creates an empty summary.
+     */
+    ReportSummary() {
+    }
+
+    /**
+     * Creates a summary from figures maintained elsewhere, e.g. the live
+     * aggregates of a {@link PropertyStore}.
+     *
+     * @param count Number of listings.
+     * @param sumPrice Sum of the prices per square meter, in minor units.
+     * @param sumTotalPrice Sum of the total prices, in minor units.
+     * @param minTotalPrice Lowest total price, in minor units.
+     * @param maxTotalPrice Highest total price, in minor units.
+     * @param sumSqmPerRoom Sum of the average square meters per room.
+     */
+    ReportSummary(long count, long sumPrice, long sumTotalPrice, long minTotalPrice, long maxTotalPrice,
+                  double sumSqmPerRoom) {
+        this.count = count;
+        this.sumPrice = sumPrice;
+        this.sumTotalPrice = sumTotalPrice;
+        this.minTotalPrice = minTotalPrice;
+        this.maxTotalPrice = maxTotalPrice;
+        this.sumSqmPerRoom = sumSqmPerRoom;
+    }
+
+    /**
+     * Calculates square meters per room the way
+     * {@link RealEstate#averageSqmPerRoom()} does, without logging.
+     *
+     * @param sqm Area in square meters.
+     * @param numberOfRooms Number of rooms.
+     * @return The average sqm per room, or 0 if there are no rooms.
+     */
+    static double sqmPerRoom(int sqm, double numberOfRooms) {
+        return numberOfRooms > 0 ? sqm / numberOfRooms : 0;
+    }
+
+    /**
+     * Summarizes every listing of a store, in parallel for large stores.
+     *
+     * @param store The store to summarize.
+     * @return The summary.
+     */
+    static ReportSummary of(PropertyStore store) {
+        PricingRules rules = PricingRules.current();
+        return store.scan(listings -> listings.collect(ReportSummary::new,
+                (summary, property) -> summary.accept(property, rules), ReportSummary::combine));
+    }
+
+    /**
+     * Summarizes every row of a table, in parallel chunks for large tables.
+     *
+     * @param table The table to summarize.
+     * @return The summary.
+     */
+    static ReportSummary of(ListingTable table) {
+        PricingRules rules = PricingRules.current();
+        int size = table.size();
+        int chunks = (size + SCAN_CHUNK - 1) / SCAN_CHUNK;
+        if (chunks <= 1) {
+            return of(table, 0, size, rules);
+        }
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> of(table, c * SCAN_CHUNK, Math.min(size, (c + 1) * SCAN_CHUNK), rules))
+                .reduce((a, b) -> {
+                    a.combine(b);
+                    return a;
+                })
+                .orElseGet(ReportSummary::new);
+    }
+
+    private static ReportSummary of(ListingTable table, int from, int to, PricingRules rules) {
+        ReportSummary summary = new ReportSummary();
+        for (int row = from; row < to; row++) {
+            summary.accept(table.price(row), table.totalPrice(row, rules),
+                    sqmPerRoom(table.sqm(row), table.numberOfRooms(row)));
+        }
+        return summary;
+    }
+
+    /**
+     * Adds one listing to the summary, priced from its fields.
+     *
+     * @param property The listing to add.
+     * @param rules The pricing rules to apply.
+     */
+    void accept(RealEstate property, PricingRules rules) {
+        accept(property.getPriceMinor(), property.computeTotalPrice(rules),
+                sqmPerRoom(property.getSqm(), property.getNumberOfRooms()));
+    }
+
+    /**
+     * Adds one listing's figures to the summary.
+     *
+     * @param price Price per square meter in minor units.
+     * @param totalPrice Total price in minor units.
+     * @param sqmPerRoom Average square meters per room.
+     */
+    void accept(long price, long totalPrice, double sqmPerRoom) {
+        long newSumPrice = Math.addExact(sumPrice, price);
+        long newSumTotalPrice = Math.addExact(sumTotalPrice, totalPrice);
+        count++;
+        sumPrice = newSumPrice;
+        sumTotalPrice = newSumTotalPrice;
+        if (totalPrice < minTotalPrice) minTotalPrice = totalPrice;
+        if (totalPrice > maxTotalPrice) maxTotalPrice = totalPrice;
+        sumSqmPerRoom += sqmPerRoom;
+    }
+
+    /**
+     * Merges another summary into this one.
+     *
+     * @param other Summary of a disjoint set of listings.
+     */
+    void combine(ReportSummary other) {
+        count += other.count;
+        sumPrice = Math.addExact(sumPrice, other.sumPrice);
+        sumTotalPrice = Math.addExact(sumTotalPrice, other.sumTotalPrice);
+        if (other.minTotalPrice < minTotalPrice) minTotalPrice = other.minTotalPrice;
+        if (other.maxTotalPrice > maxTotalPrice) maxTotalPrice = other.maxTotalPrice;
+        sumSqmPerRoom += other.sumSqmPerRoom;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Returns the average price per square meter.
+     *
+     * @return The average in currency units, or 0 if the summary is empty.
+     */
+    double averageSqmPrice() {
+        return count == 0 ? 0.0 : Money.toUnits(sumPrice) / count;
+    }
+
+    /**
+     * Returns the average of the listings' square meters per room.
+     *
+     * @return The average, or 0 if the summary is empty.
+     */
+    double averageSqmPerRoom() {
+        return count == 0 ? 0.0 : sumSqmPerRoom / count;
+    }
+
+    /**
+     * Returns the lowest total price.
+     *
+     * @return The lowest total price in minor units, or 0 if the summary is empty.
+     */
+    long cheapestTotalPrice() {
+        return count == 0 ? 0 : minTotalPrice;
+    }
+
+    /**
+     * Returns the highest total price.
+     *
+     * @return The highest total price in minor units, or 0 if the summary is empty.
+     */
+    long mostExpensiveTotalPrice() {
+        return count == 0 ? 0 : maxTotalPrice;
+    }
+
+    /**
+     * Returns the sum of all total prices.
+     *
+     * @return The sum of all total prices in minor units.
+     */
+    long totalPrice() {
+        return sumTotalPrice;
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A what-if pricing scenario over the listings of a {@link PropertyStore},
+ * e.g. "Budapest's modifier becomes 1.40 and every condominium is 5% off".
+ * <p>
+ * A scenario never changes the store or its listings. It holds only what
+ * differs from them: city modifier overrides on top of the rules in effect,
+ * discounts over a city and genre, and copy-on-write changes of single
+ * listings, kept by listing ID. {@link #summarize(PropertyStore)} reads each
+ * live listing, applies the overlay on the fly and accumulates the figures of
+ * the summary report, so any number of scenarios can be evaluated side by
+ * side, on as many threads, without copying the data.
+ * <p>
+ * A scenario is built on one thread and must not be changed while it is
+ * being evaluated. An evaluation runs as a query of the store, so the store
+ * may change meanwhile: each evaluation sees the listings as of one point in
+ * time.
+ */
+final class Scenario {
+
+    /** A discount of every listing of a city and genre; -1 or null match any. */
+    private record Discount(int cityId, Genre genre, int percentage) {
+
+        boolean matches(int listingCityId, Genre listingGenre) {
+            return (cityId < 0 || cityId == listingCityId) && (genre == null || genre == listingGenre);
+        }
+    }
+
+    /** Changed fields of one listing; unset fields keep their live values. */
+    private static final class Change {
+        /** The new city ID, or -1 if unchanged. */
+        int cityId = -1;
+        boolean priceChanged;
+        long price;
+        boolean removed;
+    }
+
+    private final Map<Integer, Integer> cityModifiers = new HashMap<>();
+    private final List<Discount> discounts = new ArrayList<>();
+    private final Map<Integer, Change> changes = new HashMap<>();
+
+    /**
+     * Overrides the modifier of a city, e.g. 1.40 for +40%.
+     *
+     * @param city The city.
+     * @param modifier The modifier.
+     * @return This scenario.
+     * @throws IllegalArgumentException If the modifier is not a valid rate.
+     */
+    Scenario cityModifier(String city, double modifier) {
+        try {
+            cityModifiers.put(CityDictionary.idOf(city), Money.basisPoints(modifier));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid modifier for " + city + ": " + modifier, e);
+        }
+        return this;
+    }
+
+    /**
+     * Discounts every listing of a city and genre. Discounts matching the
+     * same listing compound in the order they were added.
+     *
+     * @param city The city, or null for every city.
+     * @param genre The genre, or null for every genre.
+     * @param percentage The discount, from 0 to 100.
+     * @return This scenario.
+     * @throws IllegalArgumentException If the percentage is out of range.
+     */
+    Scenario discount(String city, Genre genre, int percentage) {
+        if (percentage < 0 || percentage > 100) {
+            throw new IllegalArgumentException("Invalid discount: " + percentage);
+        }
+        discounts.add(new Discount(city == null ? -1 : CityDictionary.idOf(city), genre, percentage));
+        return this;
+    }
+
+    /**
+     * Changes the price per square meter of one listing.
+     *
+     * @param id The listing ID in the store.
+     * @param price The new price per square meter.
+     * @return This scenario.
+     * @throws ArithmeticException If the price is not a representable amount.
+     */
+    Scenario setPrice(int id, double price) {
+        Change change = change(id);
+        change.price = Money.of(price);
+        change.priceChanged = true;
+        return this;
+    }
+
+    /**
+     * Moves one listing to another city.
+     *
+     * @param id The listing ID in the store.
+     * @param city The new city.
+     * @return This scenario.
+     */
+    Scenario setCity(int id, String city) {
+        change(id).cityId = CityDictionary.idOf(city);
+        return this;
+    }
+
+    /**
+     * Leaves one listing out, e.g. as if it were sold.
+     *
+     * @param id The listing ID in the store.
+     * @return This scenario.
+     */
+    Scenario remove(int id) {
+        change(id).removed = true;
+        return this;
+    }
+
+    /**
+     * Computes the summary report figures of the store as this scenario
+     * would leave it, in parallel for large stores. The store is read with
+     * {@link PropertyStore#scan}, so the figures are those of the listings
+     * as of one point in time, even while they change.
+     *
+     * @param store The store; read but not changed.
+     * @return The figures of the scenario.
+     */
+    ReportSummary summarize(PropertyStore store) {
+        PricingRules rules = PricingRules.current();
+        for (Map.Entry<Integer, Integer> override : cityModifiers.entrySet()) {
+            rules = rules.withCityModifier(override.getKey(), override.getValue());
+        }
+        PricingRules scenarioRules = rules;
+        return store.scan(listings -> listings.collect(ReportSummary::new,
+                (summary, property) -> accept(summary, property, scenarioRules), ReportSummary::combine));
+    }
+
+    private void accept(ReportSummary summary, RealEstate property, PricingRules rules) {
+        int cityId = property.getCityId();
+        long price = property.getPriceMinor();
+        if (!changes.isEmpty()) {
+            Change change = changes.get(property.storeId);
+            if (change != null) {
+                if (change.removed) return;
+                if (change.cityId >= 0) cityId = change.cityId;
+                if (change.priceChanged) price = change.price;
+            }
+        }
+        Genre genre = property.getGenre();
+        for (Discount discount : discounts) {
+            if (discount.matches(cityId, genre)) {
+                price = Money.discount(price, discount.percentage());
+            }
+        }
+        long total = property instanceof Panel panel
+                ? rules.totalPrice(cityId, price, panel.getSqm(), true, panel.getFloor(), panel.isInsulated())
+                : rules.baseTotalPrice(cityId, price, property.getSqm());
+        summary.accept(price, total, ReportSummary.sqmPerRoom(property.getSqm(), property.getNumberOfRooms()));
+    }
+
+    private Change change(int id) {
+        return changes.computeIfAbsent(id, key -> new Change());
+    }
+}
@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the listings of a {@link PropertyStore}, for restarts
+ * that skip parsing the listing file.
+ * <p>
+ * The file is little-endian and columnar: a fixed header, the table of city
+ * names, then one array per field, each starting on an 8-byte boundary so it
+ * can be read in place from a memory mapping.
+ * <pre>
+ * header   magic, version, source size, source mtime, rows, cities,
+ *          CRC32, city table length, checkpoint
+ * cities   per city: 2-byte length and UTF-8 name; padded to 8 bytes
+ * columns  price long[rows] (minor units), rooms double[rows], sqm int[rows],
+ *          city int[rows], floor int[rows], genre byte[rows],
+ *          flags byte[rows] (1 = panel, 2 = insulated, 4 = removed)
+ * </pre>
+ * The CRC32 covers everything after the header and then the other header
+ * fields, so a damaged header is detected like a damaged column.
+ * Row i is the listing with ID i, and the IDs of removed listings are kept
+ * as rows flagged removed, so a restored store hands out the same IDs as the
+ * saved one. The checkpoint number tells which {@link MutationLog} continues
+ * the snapshot.
+ * City IDs in the file index its own city table and are mapped to
+ * {@link CityDictionary} IDs when read, since the dictionary's IDs depend on
+ * the order cities were first seen. The size and modification time of the
+ * listing file the snapshot was taken from are recorded, and a snapshot whose
+ * listing file has changed since is reported as stale.
+ */
+final class Snapshot {
+
+    private static final Logger logger = Logger.getLogger(Snapshot.class.getName());
+
+    static final int VERSION = 3;
+    private static final int MAGIC = 0x50414E53; // "SNAP" in little-endian order
+    private static final int HEADER_SIZE = 48;
+    private static final int CHECKSUM_OFFSET = 32;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final byte PANEL_FLAG = 1;
+    private static final byte INSULATED_FLAG = 2;
+    private static final byte REMOVED_FLAG = 4;
+    private static final Genre[] GENRES = Genre.values();
+
+    /**
+     * Identifies the version of a listing file a snapshot was taken from.
+     *
+     * @param size File size in bytes.
+     * @param modified Last modification time in milliseconds since the epoch.
+     */
+    record Source(long size, long modified) {
+
+        /**
+         * Reads the size and modification time of a listing file.
+         *
+         * @param file The listing file.
+         * @return Its current identity.
+         * @throws IOException If the file's attributes cannot be read.
+         */
+        static Source of(Path file) throws IOException {
+            return new Source(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+    }
+
+    private Snapshot() {
+    }
+
+    /**
+     * Returns where the snapshot of a listing file is kept: next to it, with
+     * ".snapshot" appended to its name.
+     *
+     * @param listingFile The listing file.
+     * @return The snapshot path.
+     */
+    static Path pathFor(Path listingFile) {
+        return listingFile.resolveSibling(listingFile.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Writes the listings of a store to a snapshot. The file is written under
+     * a temporary name and moved into place, so a crash leaves either the old
+     * snapshot or the new one.
+     *
+     * @param file The snapshot file.
+     * @param source Identity of the listing file the store was loaded from,
+     *               taken before it was read.
+     * @param store The store to save.
+     * @param checkpoint Number of the checkpoint the snapshot is taken at;
+     *                   0 for listings just read from the listing file.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    static void write(Path file, Source source, PropertyStore store, int checkpoint) throws IOException {
+        Rows listings = store.scanById(Rows::of);
+        int rows = listings.price().length;
+        int[] cityIndex = new int[CityDictionary.size()];
+        List<byte[]> cityNames = new ArrayList<>();
+        int cityTableBytes = 0;
+        for (int cityId : listings.city()) {
+            if (cityId < 0) continue;
+            if (cityIndex[cityId] == 0) {
+                byte[] name = CityDictionary.nameOf(cityId).getBytes(StandardCharsets.UTF_8);
+                cityNames.add(name);
+                cityIndex[cityId] = cityNames.size();
+                cityTableBytes += 2 + name.length;
+            }
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ColumnWriter out = new ColumnWriter(channel, HEADER_SIZE);
+            for (byte[] name : cityNames) {
+                out.putShort((short) name.length);
+                out.put(name);
+            }
+            out.align();
+            for (long price : listings.price()) out.putLong(price);
+            for (double rooms : listings.rooms()) out.putDouble(rooms);
+            for (int sqm : listings.sqm()) out.putInt(sqm);
+            for (int cityId : listings.city()) out.putInt(cityId < 0 ? 0 : cityIndex[cityId] - 1);
+            for (int floor : listings.floor()) out.putInt(floor);
+            out.put(listings.genre());
+            out.put(listings.flags());
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putLong(source.size()).putLong(source.modified())
+                    .putInt(rows).putInt(cityNames.size())
+                    .putLong(0)
+                    .putInt(align(cityTableBytes)).putInt(checkpoint);
+            header.putLong(CHECKSUM_OFFSET, out.checksum(header));
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Wrote snapshot of " + listings.size() + " properties to " + file + " at checkpoint " + checkpoint);
+    }
+
+    /**
+     * Adds the listings of a snapshot to a store, if the snapshot is intact
+     * and was taken from the current version of the listing file.
+     *
+     * @param file The snapshot file.
+     * @param source Current identity of the listing file.
+     * @param store The empty store to add the listings to.
+     * @return The checkpoint number of the snapshot if the listings were
+     *         added; -1 if there is no snapshot or it is stale, of another
+     *         version or corrupt.
+     * @throws IOException If the snapshot exists but cannot be read.
+     */
+    static int read(Path file, Source source, PropertyStore store) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return reject(file, "unexpected size " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (NoSuchFileException e) {
+            logger.fine("No snapshot at " + file);
+            return -1;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC) return reject(file, "not a snapshot");
+        if (buffer.getInt(4) != VERSION) return reject(file, "version " + buffer.getInt(4));
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+        updateWithHeader(crc, buffer);
+        if (crc.getValue() != buffer.getLong(CHECKSUM_OFFSET)) return reject(file, "checksum mismatch");
+        if (buffer.getLong(8) != source.size() || buffer.getLong(16) != source.modified()) {
+            return reject(file, "the listing file has changed");
+        }
+        int rows = buffer.getInt(24);
+        int cities = buffer.getInt(28);
+        int cityTableBytes = buffer.getInt(40);
+        int checkpoint = buffer.getInt(44);
+        if (rows < 0 || cities < 0 || cityTableBytes < 0 || cityTableBytes % 8 != 0 || checkpoint < 0) {
+            return reject(file, "inconsistent header");
+        }
+        if (buffer.capacity() != HEADER_SIZE + (long) cityTableBytes + rows * 30L) return reject(file, "truncated");
+
+        int[] cityIds = new int[cities];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < cities; i++) {
+            int length = Short.toUnsignedInt(buffer.getShort(position));
+            byte[] name = new byte[length];
+            buffer.get(position + 2, name);
+            cityIds[i] = CityDictionary.idOf(new String(name, StandardCharsets.UTF_8));
+            position += 2 + length;
+        }
+
+        int priceColumn = HEADER_SIZE + cityTableBytes;
+        int roomsColumn = priceColumn + rows * 8;
+        int sqmColumn = roomsColumn + rows * 8;
+        int cityColumn = sqmColumn + rows * 4;
+        int floorColumn = cityColumn + rows * 4;
+        int genreColumn = floorColumn + rows * 4;
+        int flagsColumn = genreColumn + rows;
+        List<RealEstate> listings = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            byte flags = buffer.get(flagsColumn + row);
+            if ((flags & REMOVED_FLAG) != 0) {
+                listings.add(null);
+                continue;
+            }
+            long price = buffer.getLong(priceColumn + row * 8);
+            double rooms = buffer.getDouble(roomsColumn + row * 8);
+            int sqm = buffer.getInt(sqmColumn + row * 4);
+            int cityId = cityIds[buffer.getInt(cityColumn + row * 4)];
+            Genre genre = GENRES[buffer.get(genreColumn + row)];
+            listings.add((flags & PANEL_FLAG) != 0
+                    ? new Panel(cityId, price, sqm, rooms, genre, buffer.getInt(floorColumn + row * 4),
+                    (flags & INSULATED_FLAG) != 0)
+                    : new RealEstate(cityId, price, sqm, rooms, genre));
+        }
+        store.restoreAll(listings);
+        return checkpoint;
+    }
+
+    private static int reject(Path file, String reason) {
+        logger.info("Ignoring snapshot " + file + ": " + reason);
+        return -1;
+    }
+
+    private static byte flags(RealEstate property) {
+        if (property == null) return REMOVED_FLAG;
+        if (!(property instanceof Panel panel)) return 0;
+        return (byte) (PANEL_FLAG | (panel.isInsulated() ? INSULATED_FLAG : 0));
+    }
+
+    /**
+     * The fields of a store's listings by ID, copied in one consistent read
+     * of the store so that the file is written without holding it. Removed
+     * IDs have city -1, zeros elsewhere and the removed flag.
+     */
+    private record Rows(long[] price, double[] rooms, int[] sqm, int[] city, int[] floor, byte[] genre,
+                        byte[] flags, int size) {
+
+        static Rows of(List<RealEstate> listings) {
+            int rows = listings.size();
+            long[] price = new long[rows];
+            double[] rooms = new double[rows];
+            int[] sqm = new int[rows];
+            int[] city = new int[rows];
+            int[] floor = new int[rows];
+            byte[] genre = new byte[rows];
+            byte[] flags = new byte[rows];
+            int size = 0;
+            for (int id = 0; id < rows; id++) {
+                RealEstate property = listings.get(id);
+                flags[id] = Snapshot.flags(property);
+                if (property == null) {
+                    city[id] = -1;
+                    continue;
+                }
+                price[id] = property.getPriceMinor();
+                rooms[id] = property.getNumberOfRooms();
+                sqm[id] = property.getSqm();
+                city[id] = property.getCityId();
+                floor[id] = property instanceof Panel panel ? panel.getFloor() : 0;
+                genre[id] = (byte) property.getGenre().ordinal();
+                size++;
+            }
+            return new Rows(price, rooms, sqm, city, floor, genre, flags, size);
+        }
+    }
+
+    /** Adds the header fields other than the checksum to a checksum of the rest of the file. */
+    private static void updateWithHeader(CRC32 crc, ByteBuffer header) {
+        crc.update(header.slice(0, CHECKSUM_OFFSET));
+        crc.update(header.slice(CHECKSUM_OFFSET + 8, HEADER_SIZE - CHECKSUM_OFFSET - 8));
+    }
+
+    private static int align(long length) {
+        return (int) ((length + 7) & ~7L);
+    }
+
+    /**
+     * Buffered little-endian writer that checksums what it writes, starting
+     * after the header.
+     */
+    private static final class ColumnWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long position;
+        private long written;
+
+        ColumnWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void put(byte[] values) throws IOException {
+            for (byte value : values) put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(2);
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        /** Pads with zeros to the next 8-byte boundary of the payload. */
+        void align() throws IOException {
+            while ((written + buffer.position()) % 8 != 0) put((byte) 0);
+        }
+
+        /** Returns the checksum of what was written, followed by the header fields. */
+        long checksum(ByteBuffer header) {
+            updateWithHeader(crc, header);
+            return crc.getValue();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+    }
+}
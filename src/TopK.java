@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * Bounded heap that keeps the K entries with the smallest (or largest) keys
+ * seen so far. Each entry is a primitive key, such as a total price, and a
+ * reference, such as a listing ID or a file offset.
+ * <p>
+ * The root of the heap is the worst entry kept, so an offer that cannot make
+ * the cut is rejected with one comparison and any other offer costs
+ * O(log K). Nothing is allocated after construction. Equal keys are ordered
+ * by reference, so the result does not depend on the order of the offers.
+ */
+class TopK {
+
+    private final int capacity;
+    private final boolean largest;
+    private final long[] keys;
+    private final long[] refs;
+    private int count;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param k The number of entries to keep.
+     * @param largest true to keep the largest keys, false to keep the smallest.
+     */
+    TopK(int k, boolean largest) {
+        if (k < 1) throw new IllegalArgumentException("Invalid k: " + k);
+        this.capacity = k;
+        this.largest = largest;
+        this.keys = new long[k];
+        this.refs = new long[k];
+    }
+
+    /**
+     * Offers an entry.
+     *
+     * @param key The entry's key.
+     * @param ref The entry's reference.
+     * @return true if the entry is kept, false if it was rejected.
+     */
+    boolean offer(long key, long ref) {
+        if (count < capacity) {
+            siftUp(count++, key, ref);
+            return true;
+        }
+        if (!better(key, ref, keys[0], refs[0])) {
+            return false;
+        }
+        siftDown(0, key, ref, count);
+        return true;
+    }
+
+    /**
+     * Offers every entry of another heap.
+     *
+     * @param other A heap of the same direction.
+     */
+    void combine(TopK other) {
+        for (int i = 0; i < other.count; i++) {
+            offer(other.keys[i], other.refs[i]);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    int k() {
+        return capacity;
+    }
+
+    /**
+     * Returns the kept keys, best first.
+     *
+     * @return A new array of keys.
+     */
+    long[] sortedKeys() {
+        long[] sortedKeys = new long[count];
+        sortInto(sortedKeys, new long[count]);
+        return sortedKeys;
+    }
+
+    /**
+     * Returns the kept references, best first.
+     *
+     * @return A new array of references.
+     */
+    long[] sortedRefs() {
+        long[] sortedRefs = new long[count];
+        sortInto(new long[count], sortedRefs);
+        return sortedRefs;
+    }
+
+    /** Heap-sorts copies of the entries, taking the worst off the top into the last free slot. */
+    private void sortInto(long[] sortedKeys, long[] sortedRefs) {
+        long[] heapKeys = Arrays.copyOf(keys, count);
+        long[] heapRefs = Arrays.copyOf(refs, count);
+        for (int n = count; n > 0; n--) {
+            sortedKeys[n - 1] = heapKeys[0];
+            sortedRefs[n - 1] = heapRefs[0];
+            siftDown(heapKeys, heapRefs, 0, heapKeys[n - 1], heapRefs[n - 1], n - 1);
+        }
+    }
+
+    /** Whether entry a should be kept in preference to entry b. */
+    private boolean better(long keyA, long refA, long keyB, long refB) {
+        if (keyA != keyB) return largest ? keyA > keyB : keyA < keyB;
+        return refA < refB;
+    }
+
+    private void siftUp(int i, long key, long ref) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(keys[parent], refs[parent], key, ref)) break;
+            keys[i] = keys[parent];
+            refs[i] = refs[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        refs[i] = ref;
+    }
+
+    private void siftDown(int i, long key, long ref, int n) {
+        siftDown(keys, refs, i, key, ref, n);
+    }
+
+    /** Places an entry at slot i of a heap of n entries, moving worse children up. */
+    private void siftDown(long[] heapKeys, long[] heapRefs, int i, long key, long ref, int n) {
+        int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < n && better(heapKeys[child], heapRefs[child], heapKeys[child + 1], heapRefs[child + 1])) {
+                child++;
+            }
+            if (!better(key, ref, heapKeys[child], heapRefs[child])) break;
+            heapKeys[i] = heapKeys[child];
+            heapRefs[i] = heapRefs[child];
+            i = child;
+        }
+        if (n > 0) {
+            heapKeys[i] = key;
+            heapRefs[i] = ref;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The K cheapest and K most expensive listings by total price, overall and
+ * per city, kept in {@link TopK} heaps.
+ * <p>
+ * References are listing IDs when built from a {@link PropertyStore} with
+ * {@link #of(PropertyStore, int)}, row numbers when built from a
+ * {@link ListingTable} with {@link #of(ListingTable, int)}, and line offsets when filled by
+ * {@link BulkLoader#top(java.nio.file.Path, TopListings)}. Instances for
+ * disjoint parts of the data can be merged with {@link #combine(TopListings)}.
+ */
+class TopListings implements BulkLoader.RecordSink {
+
+    private final int k;
+    private final PricingRules rules;
+    private final TopK cheapest;
+    private final TopK mostExpensive;
+    /** Heaps by city ID; null for cities not seen yet. */
+    private TopK[] cheapestByCity = new TopK[0];
+    private TopK[] mostExpensiveByCity = new TopK[0];
+
+    /**
+     * Creates empty heaps that price parsed records with the given rules.
+     *
+     * @param k Number of listings to keep per heap.
+     * @param rules The pricing rules for {@link #accept(ListingRecord)}.
+     */
+    TopListings(int k, PricingRules rules) {
+        this.k = k;
+        this.rules = rules;
+        this.cheapest = new TopK(k, false);
+        this.mostExpensive = new TopK(k, true);
+    }
+
+    /**
+     * Collects the top listings of a store; the references are listing IDs.
+     *
+     * @param store The store to scan.
+     * @param k Number of listings to keep per heap.
+     * @return The top listings.
+     */
+    static TopListings of(PropertyStore store, int k) {
+        PricingRules rules = PricingRules.current();
+        return store.scan(listings -> {
+            TopListings top = new TopListings(k, rules);
+            listings.sequential().forEach(property ->
+                    top.accept(property.getCityId(), property.computeTotalPrice(rules), property.storeId));
+            return top;
+        });
+    }
+
+    /**
+     * Collects the top listings of a table; the references are row numbers.
+     *
+     * @param table The table to scan.
+     * @param k Number of listings to keep per heap.
+     * @return The top listings.
+     */
+    static TopListings of(ListingTable table, int k) {
+        PricingRules rules = PricingRules.current();
+        TopListings top = new TopListings(k, rules);
+        for (int row = 0; row < table.size(); row++) {
+            top.accept(table.cityId(row), table.totalPrice(row, rules), row);
+        }
+        return top;
+    }
+
+    /**
+     * Adds a parsed listing, referenced by its line offset.
+     *
+     * @param record The parsed fields.
+     */
+    @Override
+    public void accept(ListingRecord record) {
+        accept(record.cityId, record.totalPrice(rules), record.offset);
+    }
+
+    /**
+     * Adds one listing.
+     *
+     * @param cityId The listing's city ID.
+     * @param totalPrice The listing's total price.
+     * @param ref The listing's reference.
+     */
+    void accept(int cityId, long totalPrice, long ref) {
+        cheapest.offer(totalPrice, ref);
+        mostExpensive.offer(totalPrice, ref);
+        addCity(cityId);
+        cheapestByCity[cityId].offer(totalPrice, ref);
+        mostExpensiveByCity[cityId].offer(totalPrice, ref);
+    }
+
+    /**
+     * Merges another instance with the same K into this one.
+     *
+     * @param other Top listings of a disjoint set of listings.
+     */
+    void combine(TopListings other) {
+        cheapest.combine(other.cheapest);
+        mostExpensive.combine(other.mostExpensive);
+        for (int cityId = 0; cityId < other.cheapestByCity.length; cityId++) {
+            if (other.cheapestByCity[cityId] == null) continue;
+            addCity(cityId);
+            cheapestByCity[cityId].combine(other.cheapestByCity[cityId]);
+            mostExpensiveByCity[cityId].combine(other.mostExpensiveByCity[cityId]);
+        }
+    }
+
+    /** Creates the heaps of a city if it has none yet. */
+    private void addCity(int cityId) {
+        if (cityId >= cheapestByCity.length) {
+            int length = Math.max(cityId + 1, cheapestByCity.length * 2);
+            cheapestByCity = Arrays.copyOf(cheapestByCity, length);
+            mostExpensiveByCity = Arrays.copyOf(mostExpensiveByCity, length);
+        }
+        if (cheapestByCity[cityId] == null) {
+            cheapestByCity[cityId] = new TopK(k, false);
+            mostExpensiveByCity[cityId] = new TopK(k, true);
+        }
+    }
+
+    int k() {
+        return k;
+    }
+
+    TopK cheapest() {
+        return cheapest;
+    }
+
+    TopK mostExpensive() {
+        return mostExpensive;
+    }
+
+    /**
+     * Returns the cheapest listings of a city.
+     *
+     * @param cityId A city ID.
+     * @return The heap, or null if no listing of the city was seen.
+     */
+    TopK cheapest(int cityId) {
+        return cityId < cheapestByCity.length ? cheapestByCity[cityId] : null;
+    }
+
+    /**
+     * Returns the most expensive listings of a city.
+     *
+     * @param cityId A city ID.
+     * @return The heap, or null if no listing of the city was seen.
+     */
+    TopK mostExpensive(int cityId) {
+        return cityId < mostExpensiveByCity.length ? mostExpensiveByCity[cityId] : null;
+    }
+
+    /**
+     * Returns the IDs of the cities with at least one listing, in ID order.
+     *
+     * @return A new array of city IDs.
+     */
+    int[] cityIds() {
+        return IntStream.range(0, cheapestByCity.length)
+                .filter(cityId -> cheapestByCity[cityId] != null)
+                .toArray();
+    }
+}
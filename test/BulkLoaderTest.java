@@ -0,0 +1,43 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.LogManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link BulkLoader} paths that the agent's sample file does not reach.
+ */
+class BulkLoaderTest {
+
+    @BeforeAll
+    static void silenceLogging() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    void listingThatOverflowsTheSumsIsABadLine(@TempDir Path directory) throws Exception {
+        // Each total fits on its own, but the two large ones do not fit in one sum.
+        Path file = Files.writeString(directory.resolve("listings.txt"), """
+                REALESTATE#Kisvárda#250000#100#4#CONDOMINIUM
+                REALESTATE#Kisvárda#500000000000000#100#4#CONDOMINIUM
+                REALESTATE#Kisvárda#500000000000000#100#4#CONDOMINIUM
+                REALESTATE#Kisvárda#220000#120#5#FAMILYHOUSE
+                """);
+        PropertyStore store = new PropertyStore();
+
+        BulkLoader.LoadStats stats = new BulkLoader().load(file, store);
+
+        assertEquals(3, stats.rows());
+        assertEquals(1, stats.errors());
+        assertEquals(3, store.size());
+        assertEquals(3, store.idLimit());
+        long total = 0;
+        for (RealEstate property : store) {
+            total += property.computeTotalPrice(PricingRules.current());
+        }
+        assertEquals(total, store.summary().totalPrice());
+    }
+}
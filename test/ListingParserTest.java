@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the field-count rules of {@link ListingParser}, which follow the
+ * {@link String#split} parsing it replaced.
+ */
+class ListingParserTest {
+
+    private static final String LISTING = "PANEL#Budapest#180000#70#3#CONDOMINIUM";
+
+    @Test
+    void panelNeedsAFieldAfterTheFloor() {
+        assertPanel(LISTING + "#4#yes", 4, true);
+        assertPanel(LISTING + "#4#no", 4, false);
+        assertPanel(LISTING + "#4# ", 4, false);
+        assertPanel(LISTING + "#4#yes#extra", 4, true);
+        assertPlain(LISTING + "#4");
+        assertPlain(LISTING + "#4#");
+        assertPlain(LISTING + "#4##");
+        assertPlain(LISTING);
+    }
+
+    @Test
+    void panelWithAnInvalidFloorIsRejected() {
+        assertFalse(parse(LISTING + "#high#yes", new ListingRecord()));
+        assertFalse(parse(LISTING + "##yes", new ListingRecord()));
+    }
+
+    private static void assertPanel(String line, int floor, boolean insulated) {
+        ListingRecord record = new ListingRecord();
+        assertTrue(parse(line, record), line);
+        assertTrue(record.panel, line);
+        assertEquals(floor, record.floor, line);
+        assertEquals(insulated, record.insulated, line);
+    }
+
+    private static void assertPlain(String line) {
+        ListingRecord record = new ListingRecord();
+        assertTrue(parse(line, record), line);
+        assertFalse(record.panel, line);
+        assertFalse(record.toRealEstate() instanceof Panel, line);
+    }
+
+    private static boolean parse(String line, ListingRecord record) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return new ListingParser().parse(ByteBuffer.wrap(bytes), 0, bytes.length, record);
+    }
+}
@@ -0,0 +1,30 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.logging.LogManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link ListingView} behaves like the {@link RealEstate} it
+ * stands in for.
+ */
+class ListingViewTest {
+
+    @BeforeAll
+    static void silenceLogging() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    void discountFollowsThePropertyContract() {
+        RealEstate property = new RealEstate("Debrecen", 200_000, 80, 3, Genre.CONDOMINIUM);
+        ColumnarStore table = new ColumnarStore();
+        ListingView view = table.view().moveTo(table.add(property));
+
+        for (int percentage : new int[] {-1, 101, 10, 0, 100}) {
+            property.makeDiscount(percentage);
+            view.makeDiscount(percentage);
+            assertEquals(property.getPriceMinor(), table.price(view.row()), "after a discount of " + percentage);
+        }
+    }
+}
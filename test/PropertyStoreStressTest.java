@@ -0,0 +1,237 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress test of a {@link PropertyStore} under concurrent writers, bulk
+ * discounts and scenario evaluation. While the threads run, every scenario
+ * result must be internally consistent; once they are done, the live figures
+ * of the store must match a full recompute over its listings. A second test
+ * measures read throughput at 1, 2 and 4 reader threads against a writer;
+ * {@code RealEstateBenchmark --stress} measures the same over longer runs.
+ */
+class PropertyStoreStressTest {
+
+    private static final String[] CITIES = {"Budapest", "Debrecen", "Nyíregyháza", "Kisvárda"};
+    private static final Genre[] GENRES = Genre.values();
+    private static final int INITIAL_SIZE = 20_000;
+    private static final int WRITERS = 3;
+    private static final int WRITES_PER_WRITER = 30_000;
+    private static final int DISCOUNTS = 300;
+    private static final int EVALUATIONS = 300;
+    private static final int[] READER_COUNTS = {1, 2, 4};
+    private static final long READ_RUN_MILLIS = 500;
+    /** Lowest share of the single reader's throughput that more readers together must reach. */
+    private static final double MIN_THROUGHPUT_SHARE = 0.5;
+
+    @BeforeAll
+    static void silenceLogging() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    void concurrentChangesKeepFiguresExact() throws Exception {
+        PropertyStore store = new PropertyStore(INITIAL_SIZE);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            store.add(listing(random));
+        }
+        AtomicInteger expectedSize = new AtomicInteger(INITIAL_SIZE);
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int w = 0; w < WRITERS; w++) {
+                SplittableRandom writerRandom = random.split();
+                tasks.add(pool.submit(() -> write(store, writerRandom, expectedSize)));
+            }
+            SplittableRandom discountRandom = random.split();
+            tasks.add(pool.submit(() -> discount(store, discountRandom)));
+            tasks.add(pool.submit(() -> evaluate(store)));
+            for (Future<?> task : tasks) {
+                // Rethrows the first assertion or exception of a task.
+                task.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<RealEstate> live = store.stream().toList();
+        assertEquals(expectedSize.get(), store.size(), "size after adds and removes");
+        assertEquals(store.size(), live.size(), "size against the live listings");
+
+        PricingRules rules = PricingRules.current();
+        ReportSummary expected = new ReportSummary();
+        long[] totals = new long[live.size()];
+        for (int i = 0; i < totals.length; i++) {
+            RealEstate property = live.get(i);
+            totals[i] = recompute(property, rules);
+            expected.accept(property.getPriceMinor(), totals[i],
+                    ReportSummary.sqmPerRoom(property.getSqm(), property.getNumberOfRooms()));
+        }
+        Arrays.sort(totals);
+
+        ReportSummary summary = store.summary();
+        assertEquals(expected.count(), summary.count(), "count");
+        assertEquals(expected.totalPrice(), summary.totalPrice(), "sum of totals against a full recompute");
+        assertEquals(expected.averageSqmPrice(), summary.averageSqmPrice(), "sum of prices against a full recompute");
+        assertEquals(totals[0], summary.cheapestTotalPrice(), "cheapest heap top against a sort");
+        assertEquals(totals[totals.length - 1], summary.mostExpensiveTotalPrice(), "most expensive heap top against a sort");
+
+        ReportSummary unchanged = new Scenario().summarize(store);
+        assertEquals(summary.count(), unchanged.count(), "count of an empty scenario");
+        assertEquals(summary.totalPrice(), unchanged.totalPrice(), "total of an empty scenario");
+        assertEquals(summary.cheapestTotalPrice(), unchanged.cheapestTotalPrice(), "cheapest of an empty scenario");
+    }
+
+    @Test
+    void readThroughputHoldsUnderWrites() throws Exception {
+        PropertyStore store = new PropertyStore(INITIAL_SIZE);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            store.add(listing(random));
+        }
+        // Warms up the read and write paths before anything is measured.
+        readRun(store, 1);
+
+        double[] throughput = new double[READER_COUNTS.length];
+        for (int i = 0; i < READER_COUNTS.length; i++) {
+            throughput[i] = readRun(store, READER_COUNTS[i]);
+            System.out.printf("%d readers: %.0f reads/s%n", READER_COUNTS[i], throughput[i]);
+        }
+        // Readers take no lock while no write overlaps them, so more readers must not slow reads down as a whole.
+        for (int i = 1; i < READER_COUNTS.length; i++) {
+            assertTrue(throughput[i] >= MIN_THROUGHPUT_SHARE * throughput[0],
+                    READER_COUNTS[i] + " readers: " + Arrays.toString(throughput));
+        }
+    }
+
+    /**
+     * Runs reader threads against one writer that keeps changing prices, and
+     * returns the reads per second of all readers together.
+     */
+    private static double readRun(PropertyStore store, int readers) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(readers + 1);
+        try {
+            Future<?> writer = pool.submit(() -> {
+                SplittableRandom random = new SplittableRandom(readers);
+                while (running.get()) {
+                    store.get(random.nextInt(store.idLimit())).setPrice(100_000 + random.nextInt(400_000));
+                }
+            });
+            List<Future<Long>> counts = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                SplittableRandom readerRandom = new SplittableRandom(r);
+                counts.add(pool.submit(() -> {
+                    long reads = 0;
+                    while (running.get()) {
+                        assertEquals(INITIAL_SIZE, store.summary().count(), "summary count");
+                        store.find(CITIES[readerRandom.nextInt(CITIES.length)], Genre.FARM, 0, Long.MAX_VALUE, 2, 2);
+                        reads += 2;
+                    }
+                    return reads;
+                }));
+            }
+            Thread.sleep(READ_RUN_MILLIS);
+            running.set(false);
+            writer.get(1, TimeUnit.MINUTES);
+            long reads = 0;
+            for (Future<Long> count : counts) {
+                reads += count.get(1, TimeUnit.MINUTES);
+            }
+            return reads * 1000.0 / READ_RUN_MILLIS;
+        } finally {
+            running.set(false);
+            pool.shutdownNow();
+        }
+    }
+
+    /** Adds, removes and changes random listings, tracking the expected size. */
+    private static void write(PropertyStore store, SplittableRandom random, AtomicInteger expectedSize) {
+        for (int i = 0; i < WRITES_PER_WRITER; i++) {
+            int operation = random.nextInt(100);
+            if (operation < 15) {
+                store.add(listing(random));
+                expectedSize.incrementAndGet();
+                continue;
+            }
+            int id = random.nextInt(store.idLimit());
+            if (operation < 30) {
+                if (store.remove(id)) expectedSize.decrementAndGet();
+                continue;
+            }
+            RealEstate property = store.get(id);
+            if (property == null) continue;
+            if (operation < 70) property.setPrice(100_000 + random.nextInt(400_000));
+            else if (operation < 85) property.setSqm(20 + random.nextInt(200));
+            else if (operation < 95) property.setCity(CITIES[random.nextInt(CITIES.length)]);
+            else property.setGenre(GENRES[random.nextInt(GENRES.length)]);
+        }
+    }
+
+    /** Runs bulk discounts, some of them over a total price range, which uses the price order. */
+    private static void discount(PropertyStore store, SplittableRandom random) {
+        for (int i = 0; i < DISCOUNTS; i++) {
+            String city = CITIES[random.nextInt(CITIES.length)];
+            Genre genre = random.nextBoolean() ? GENRES[random.nextInt(GENRES.length)] : null;
+            long minTotalPrice = Long.MIN_VALUE;
+            long maxTotalPrice = Long.MAX_VALUE;
+            if (i % 3 == 0) {
+                minTotalPrice = 10_000_000 * Money.SCALE;
+                maxTotalPrice = 40_000_000 * Money.SCALE;
+            }
+            store.discount(city, genre, minTotalPrice, maxTotalPrice,
+                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 1 + random.nextInt(3));
+        }
+    }
+
+    /** Evaluates scenarios and checks that each saw a consistent set of listings. */
+    private static void evaluate(PropertyStore store) {
+        Scenario scenario = new Scenario()
+                .cityModifier("Budapest", 1.40)
+                .discount("Debrecen", Genre.CONDOMINIUM, 10);
+        for (int i = 0; i < EVALUATIONS; i++) {
+            ReportSummary summary = scenario.summarize(store);
+            long count = summary.count();
+            assertTrue(count > 0, "scenario count");
+            assertTrue(summary.cheapestTotalPrice() <= summary.mostExpensiveTotalPrice(), "scenario extremes");
+            assertTrue(summary.totalPrice() >= summary.cheapestTotalPrice() * count, "scenario total above the minimum");
+            assertTrue(summary.totalPrice() <= summary.mostExpensiveTotalPrice() * count, "scenario total below the maximum");
+        }
+    }
+
+    /** Calculates a listing's total price from its fields, bypassing every cache. */
+    private static long recompute(RealEstate property, PricingRules rules) {
+        if (property instanceof Panel panel) {
+            return rules.totalPrice(panel.getCityId(), panel.getPriceMinor(), panel.getSqm(), true,
+                    panel.getFloor(), panel.isInsulated());
+        }
+        return rules.totalPrice(property.getCityId(), property.getPriceMinor(), property.getSqm(), false, 0, false);
+    }
+
+    private static RealEstate listing(SplittableRandom random) {
+        String city = CITIES[random.nextInt(CITIES.length)];
+        int price = 100_000 + random.nextInt(400_000);
+        int sqm = 20 + random.nextInt(200);
+        double rooms = 1 + random.nextInt(6);
+        Genre genre = GENRES[random.nextInt(GENRES.length)];
+        if (random.nextInt(4) == 0) {
+            return new Panel(city, price, sqm, rooms, genre, random.nextInt(11), random.nextBoolean());
+        }
+        return new RealEstate(city, price, sqm, rooms, genre);
+    }
+}
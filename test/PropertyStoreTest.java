@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.logging.LogManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of single-threaded {@link PropertyStore} behaviour that the stress
+ * test does not reach.
+ */
+class PropertyStoreTest {
+
+    @BeforeAll
+    static void silenceLogging() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    void changeThatOverflowsIsUndone() {
+        PropertyStore store = new PropertyStore();
+        RealEstate first = new RealEstate("Kisvárda", 200_000, 100, 3, Genre.FAMILYHOUSE);
+        RealEstate second = new RealEstate("Kisvárda", 300_000, 100, 4, Genre.FAMILYHOUSE);
+        store.add(first);
+        store.add(second);
+        store.add(new Panel("Kisvárda", 150_000, 60, 2, Genre.CONDOMINIUM, 3, true));
+
+        // The listing's own total overflows.
+        assertThrows(ArithmeticException.class, () -> first.setPrice(1e15));
+        assertEquals(Money.of(200_000), first.getPriceMinor());
+        assertMatchesRecompute(store);
+
+        // Each total fits, but their sum does not.
+        first.setPrice(5e14);
+        assertThrows(ArithmeticException.class, () -> second.setPrice(5e14));
+        assertEquals(Money.of(300_000), second.getPriceMinor());
+        assertMatchesRecompute(store);
+
+        // The listing is still indexed once and can be changed and removed.
+        first.setPrice(250_000);
+        second.setSqm(120);
+        assertEquals(1, store.find("Kisvárda", Genre.FAMILYHOUSE, Long.MIN_VALUE, Long.MAX_VALUE, 4, 4).size());
+        assertMatchesRecompute(store);
+        store.remove(second.storeId);
+        assertMatchesRecompute(store);
+    }
+
+    @Test
+    void emptyRangesMatchNothing() {
+        PropertyStore store = new PropertyStore();
+        for (int i = 1; i <= 10; i++) {
+            store.add(new RealEstate("Debrecen", 1000 * i, 50, i, Genre.CONDOMINIUM));
+        }
+        long high = store.get(7).getTotalPrice();
+        long low = store.get(2).getTotalPrice();
+
+        assertEquals(List.of(), store.find(null, null, high, low, 0, Double.POSITIVE_INFINITY));
+        assertEquals(List.of(), store.find(null, null, Long.MIN_VALUE, Long.MAX_VALUE, 5, 4));
+        assertEquals(List.of(), store.find("Debrecen", null, high, low, 0, Double.POSITIVE_INFINITY));
+        assertEquals(0, store.discount(null, null, high, low, 0, Double.POSITIVE_INFINITY, 10));
+        assertEquals(6, store.find(null, null, low, high, 0, Double.POSITIVE_INFINITY).size());
+    }
+
+    /** Checks the store's figures against a full recompute over its listings. */
+    private static void assertMatchesRecompute(PropertyStore store) {
+        ReportSummary expected = new ReportSummary();
+        long cheapest = Long.MAX_VALUE;
+        long mostExpensive = Long.MIN_VALUE;
+        for (RealEstate property : store) {
+            long total = property.computeTotalPrice(PricingRules.current());
+            expected.accept(property.getPriceMinor(), total,
+                    ReportSummary.sqmPerRoom(property.getSqm(), property.getNumberOfRooms()));
+            cheapest = Math.min(cheapest, total);
+            mostExpensive = Math.max(mostExpensive, total);
+        }
+        ReportSummary summary = store.summary();
+        assertEquals(expected.count(), summary.count(), "count");
+        assertEquals(expected.totalPrice(), summary.totalPrice(), "sum of totals");
+        assertEquals(expected.averageSqmPrice(), summary.averageSqmPrice(), "sum of prices");
+        assertEquals(cheapest, summary.cheapestTotalPrice(), "cheapest");
+        assertEquals(mostExpensive, summary.mostExpensiveTotalPrice(), "most expensive");
+    }
+}
@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.LogManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@link Snapshot} files: a round trip, and damage to the header
+ * fields, which the checksum must catch.
+ */
+class SnapshotTest {
+
+    private static final Snapshot.Source SOURCE = new Snapshot.Source(1234, 5678);
+
+    @BeforeAll
+    static void silenceLogging() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    void restoresListingsWithTheirIds(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("listings.txt.snapshot");
+        PropertyStore store = store();
+        Snapshot.write(file, SOURCE, store, 3);
+
+        PropertyStore restored = new PropertyStore();
+        assertEquals(3, Snapshot.read(file, SOURCE, restored));
+        assertEquals(store.idLimit(), restored.idLimit());
+        assertEquals(store.size(), restored.size());
+        for (int id = 0; id < store.idLimit(); id++) {
+            assertEquals(String.valueOf(store.get(id)), String.valueOf(restored.get(id)), "listing " + id);
+        }
+    }
+
+    @Test
+    void damagedHeaderFieldsAreRejected(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("listings.txt.snapshot");
+        Snapshot.write(file, SOURCE, store(), 3);
+        // Rows, city count, city table length and checkpoint.
+        for (int offset : List.of(24, 28, 40, 44)) {
+            int value = readInt(file, offset);
+            writeInt(file, offset, value + 1);
+            PropertyStore restored = new PropertyStore();
+            assertEquals(-1, Snapshot.read(file, SOURCE, restored), "header offset " + offset);
+            assertEquals(0, restored.size());
+            writeInt(file, offset, value);
+        }
+        assertEquals(3, Snapshot.read(file, SOURCE, new PropertyStore()));
+    }
+
+    private static PropertyStore store() {
+        PropertyStore store = new PropertyStore();
+        store.add(new RealEstate("Budapest", 250_000, 100, 4, Genre.CONDOMINIUM));
+        store.add(new Panel("Debrecen", 180_000, 60, 2, Genre.CONDOMINIUM, 4, true));
+        store.add(new RealEstate("Kisvárda", 90_000, 140, 5, Genre.FARM));
+        store.remove(1);
+        store.add(new Panel("Budapest", 210_000, 55, 2, Genre.CONDOMINIUM, 10, false));
+        return store;
+    }
+
+    private static int readInt(Path file, int offset) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(value, offset);
+            return value.getInt(0);
+        }
+    }
+
+    private static void writeInt(Path file, int offset, int value) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value), offset);
+        }
+    }
+}